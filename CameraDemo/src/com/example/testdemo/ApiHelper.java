@@ -38,6 +38,7 @@ public class ApiHelper {
         public static final int JELLY_BEAN = 16;
         public static final int JELLY_BEAN_MR1 = 17;
         public static final int JELLY_BEAN_MR2 = 18;
+        public static final int KITKAT = 19;
     }
 
     public static final boolean AT_LEAST_16 = Build.VERSION.SDK_INT >= 16;
@@ -63,6 +64,11 @@ public class ApiHelper {
     public static final boolean HAS_REUSING_BITMAP_IN_BITMAP_FACTORY =
             Build.VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB;
 
+    // Before KitKat the reused bitmap must match the decoded size exactly
+    // and inSampleSize must be 1.
+    public static final boolean HAS_REUSING_BITMAP_OF_ANY_SIZE =
+            Build.VERSION.SDK_INT >= VERSION_CODES.KITKAT;
+
     public static final boolean HAS_SET_BEAM_PUSH_URIS =
             Build.VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN;
 
@@ -6,10 +6,11 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
-import android.hardware.Camera.OnZoomChangeListener;
 import android.hardware.Camera.Parameters;
 import android.hardware.Camera.PictureCallback;
 import android.hardware.Camera.Size;
+import android.location.Location;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.util.Log;
@@ -26,22 +27,23 @@ import android.widget.RelativeLayout.LayoutParams;
 import android.widget.SeekBar;
 import android.widget.SeekBar.OnSeekBarChangeListener;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
-public class CameraActivity extends Activity implements OnZoomChangeListener,
-        OnSeekBarChangeListener, OnItemClickListener {
+public class CameraActivity extends Activity implements OnSeekBarChangeListener,
+        OnItemClickListener {
 
     public static final String TAG = "CameraActivity";
 
     private CameraPreview mPreview;
     private FrameLayout parentPreview;
+    // 在相机线程中打开与释放相机
+    private CameraDevice mCameraDevice;
+    // 已经请求打开相机，onCreate中预热时onResume不需要再打开
+    private boolean mCameraRequested;
     private Camera mCamera;
+    private CameraParameterCache mParameters;
     private int numberOfCameras;
     private int cameraCurrentlyLocked;
     private int defaultCameraId = -1;
@@ -54,16 +56,53 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
     private LinearLayout controlPicture;
     private List<Rotatable> rotateViewList;
     private PopupWindows cameraSettingPop;
+    private CaptureWriter mCaptureWriter;
+    private ThumbnailService mThumbnailService;
+    // 当前显示的预览图，替换以后放回缓存池
+    private Bitmap mPreviewBitmap;
+    // 拍照的位置，不为null时在照片写入之前加入exif
+    private volatile Location mCaptureLocation;
+    // 拍照时的预览尺寸，照片回调时暂停可能已经取消了预览的相机
+    private int mCapturePreviewWidth;
+    private int mCapturePreviewHeight;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // 预热：打开相机与读取参数在相机线程中进行，同时在这里加载布局
+        // 相机的能力按系统指纹缓存在文件中，在相机线程中读取
+        mCameraDevice = new CameraDevice(new CameraCapabilityCache(
+                new File(getCacheDir(), CameraCapabilityCache.CACHE_FILE_NAME),
+                Build.FINGERPRINT));
+        mCameraDevice.open(-1, mOpenListener);
+        mCameraRequested = true;
         setContentView(R.layout.camera_main);
 
         requstValueInIntent();
+        mCaptureWriter = new CaptureWriter();
+        mThumbnailService = new ThumbnailService();
         initButton();
         initRotateView();
         initCamera();
+        initPreview();
+    }
+
+    /**
+     * 创建预览，暂停以后恢复时重复使用，不需要重新创建surface与计算预览尺寸
+     */
+    private void initPreview() {
+        mPreview = new CameraPreview(this);
+        mPreview.getFrameSource().setOnFirstFrameListener(
+                new PreviewFrameSource.OnFirstFrameListener() {
+                    @Override
+                    public void onFirstFrame() {
+                        StartupTimer timer = mCameraDevice.getStartupTimer();
+                        if (timer.mark(StartupTimer.MARK_FIRST_FRAME) >= 0) {
+                            Log.i(TAG, "camera startup " + timer);
+                        }
+                    }
+                });
+        parentPreview.addView(mPreview);
     }
 
     /**
@@ -98,7 +137,9 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
         for (int i = 0; i < numberOfCameras; i++) {
             Camera.getCameraInfo(i, cameraInfo);
             if (cameraInfo.facing == CameraInfo.CAMERA_FACING_BACK) {
+                // 与CameraDevice打开的相机相同，取第一个后置摄像头
                 defaultCameraId = i;
+                break;
             }
         }
     }
@@ -175,55 +216,86 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
     @Override
     protected void onResume() {
         super.onResume();
-        // 激活照相功能
-        // 打开相机失败 Fail to connect to camera service
-        mCamera = Camera.open();
-        if (mCamera != null) {
+        // 激活照相功能，在相机线程中打开相机，不阻塞界面
+        if (!mCameraRequested) {
+            mCameraDevice.open(-1, mOpenListener);
+            mCameraRequested = true;
+        }
+        mOrientationListener.enable();
 
-            Parameters param = mCamera.getParameters();
+    }
+
+    /**
+     * 相机打开以后创建预览，在主线程中回调
+     */
+    private final CameraDevice.OnOpenListener mOpenListener = new CameraDevice.OnOpenListener() {
+        @Override
+        public void onCameraOpened(CameraDevice device) {
+            mCamera = device.getCamera();
+            // 打开相机时读取了一次参数，之后都使用缓存
+            mParameters = device.getParameters();
             SeekBar zoomControl = (SeekBar) findViewById(R.id.zoom_control);
-            int maxZoom = param.getMaxZoom();
+            int maxZoom = mParameters.getMaxZoom();
             if (maxZoom > 0) {
                 zoomControl.setVisibility(View.VISIBLE);
-                zoomControl.setMax(param.getMaxZoom());
-                zoomControl.setProgress(param.getZoom());
+                zoomControl.setMax(maxZoom);
+                zoomControl.setProgress(mParameters.getZoom());
             } else {
                 zoomControl.setVisibility(View.GONE);
             }
 
-            mCamera.setZoomChangeListener(this);
             cameraCurrentlyLocked = defaultCameraId;
-            mPreview = new CameraPreview(this);
             if (cameraCurrentlyLocked > -1) {
-                mPreview.setCamera(mCamera, cameraCurrentlyLocked);
+                mPreview.setCamera(device, cameraCurrentlyLocked);
             } else {
                 Log.e("CameraActivity", "no camera ");
             }
-            parentPreview.addView(mPreview);
-
         }
-        mOrientationListener.enable();
 
-    }
+        @Override
+        public void onCameraOpenFailed(RuntimeException e) {
+            // 打开相机失败 Fail to connect to camera service
+            Log.e(TAG, "open camera failed", e);
+        }
+    };
 
     @Override
     protected void onPause() {
         super.onPause();
-        // 暂停照相功能
+        // 暂停照相功能，依次取消预览回调、停止预览、释放相机，都在相机线程中执行
         if (mCamera != null) {
-            mCamera.setZoomChangeListener(null);
             if (cameraCurrentlyLocked > -1) {
                 mPreview.setCamera(null, cameraCurrentlyLocked);
             } else {
                 Log.e("CameraActivity", "no camera ");
             }
-            mCamera.release();
-            parentPreview.removeView(mPreview);
+            mParameters = null;
             mCamera = null;
         }
+        // 还在打开时也会在打开以后释放，预览的view保留到下次恢复
+        mCameraDevice.release();
+        mCameraRequested = false;
         mOrientationListener.disable();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mCameraDevice.quit();
+        // 已经提交的照片会在后台继续写完
+        mCaptureWriter.shutdown();
+        mThumbnailService.shutdown();
+    }
+
+    /**
+     * 设置之后拍摄的照片的位置，位置信息与照片数据一起写入，不需要写完照片以后再改写文件
+     * 
+     * @param location 为null时不写入位置
+     */
+    public void setCaptureLocation(Location location) {
+        mCaptureLocation = location;
+    }
+
     /**
      * 照相界面按钮处理事件
      * 
@@ -267,22 +339,23 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
         ListView screenSize = (ListView) cameraSettingPop.getContentView().findViewById(
                 R.id.camera_setting_list);
         if (screenSize.getAdapter() == null) {
-            // 获取照片支持的尺寸
-            Parameters paramter = mCamera.getParameters();
-            List<Size> sizeList = paramter.getSupportedPictureSizes();
-            Size currSize = paramter.getPictureSize();
+            // 获取照片支持的尺寸，缓存中已经按高度与宽度排序
+            CameraCapabilityCache.Capabilities capabilities = mCameraDevice.getCapabilities();
+            if (capabilities == null) {
+                // 相机还没有打开
+                return;
+            }
+            int[] widths = capabilities.getPictureWidths();
+            int[] heights = capabilities.getPictureHeights();
+            Size currSize = mParameters.getPictureSize();
             List<CameraSizeBean> showList = new ArrayList<CameraSizeBean>();
             int position = -1;
             // 转换数据类型
-            if (sizeList != null) {
-                // 排序list
-                Collections.sort(sizeList, new SortByPicSize());
-                for (int i = 0; i < sizeList.size(); i++) {
-                    Size item = sizeList.get(i);
-                    showList.add(new CameraSizeBean(item));
-                    if (item.equals(currSize)) {
-                        position = i;
-                    }
+            for (int i = 0; i < widths.length; i++) {
+                showList.add(new CameraSizeBean(widths[i], heights[i]));
+                if (currSize != null && currSize.width == widths[i]
+                        && currSize.height == heights[i]) {
+                    position = i;
                 }
             }
             // 设置数据适配器
@@ -301,23 +374,6 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
         cameraSettingPop.showLeftPopDownward(v);
     }
 
-    /**
-     * 排序List<Size> 根据宽度与高度
-     * 
-     * @author dlwy
-     */
-    class SortByPicSize implements Comparator<Size> {
-        public int compare(Size o1, Size o2) {
-            if (o1.height >= o2.height) {
-                return 1;
-            } else if (o1.height == o2.height) {
-                return o1.width - o2.width;
-            } else {
-                return -1;
-            }
-        }
-    }
-
     /**
      * 取消照相
      */
@@ -374,109 +430,137 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
             parentPreview.setVisibility(View.VISIBLE);
         }
         takePreview.setVisibility(View.GONE);
-        mPreview.setCamera(mCamera, cameraCurrentlyLocked);
-        mCamera.startPreview();
+        if (mCamera == null) {
+            return;
+        }
+        // 参数与预览回调在拍照以后仍然有效，只需要重新开始预览
+        mCameraDevice.startPreview(null);
     }
 
     /**
      * 照相
      */
     public void takePicture() {
+        if (mCamera == null) {
+            // 相机还没有打开
+            return;
+        }
         setCameraRotaParams(mCamera);
+        Size previewSize = mPreview.getmPreviewSize();
+        mCapturePreviewWidth = previewSize.width;
+        mCapturePreviewHeight = previewSize.height;
         CameraUtil.fadeOut(parentPreview);
-        mCamera.takePicture(null, null, jpegCallback);
+        mCameraDevice.takePicture(jpegCallback);
 
     }
 
     /**
-     * 相片回调处理逻辑
+     * 相片回调处理逻辑，照片数据交给写入队列，写入完成以后再显示预览图与控制窗口
      */
     PictureCallback jpegCallback = new PictureCallback() {
         public void onPictureTaken(byte[] data, Camera camera) {
 
-            // 把数据写入到文件中
-            writeDataToFile(data);
-
-            // 加载照片，主要用来压缩所照的相片
-            int degrees = Exif.getOrientation(data);
-            Log.i("CameraDemo", "exif data degrees" + degrees);
-
-            Size preViewSize = mPreview.getmPreviewSize();
+            File pictureFile = createPictureFile();
+            currentFile = pictureFile.getAbsolutePath();
 
             int previewWidth = parentPreview.getWidth();
             int previewHeight = parentPreview.getHeight();
-            int cameraWidth = preViewSize.width;
-            int cameraHeight = preViewSize.height;
-            int width = previewWidth < cameraWidth ? previewWidth : cameraWidth;
-            int height = previewHeight < cameraHeight ? previewHeight : cameraHeight;
-
-            Bitmap bitPreView = CameraUtil.decodeSampledBitmapFromFile(data, width, height);
-            bitPreView.getWidth();
-            bitPreView.getHeight();
-            // if (mJpegRotation % 180 != 0) {
-            // int x = r.height;
-            // int y = r.width;
-            // r.width = x;
-            // r.height = y;
-            // }
+            int cameraWidth = mCapturePreviewWidth;
+            int cameraHeight = mCapturePreviewHeight;
+            final int width = previewWidth < cameraWidth ? previewWidth : cameraWidth;
+            final int height = previewHeight < cameraHeight ? previewHeight : cameraHeight;
 
             // 设置照相预览的相片旋转的角度
-            int roate = mOrientation
+            final int roate = mOrientation
                     + CameraUtil.getDisplayRotation(CameraActivity.this);
-            // roate = roate - degrees;
-            roate = (360 - roate) % 360 + degrees;
-
-            // 旋转照片
-            Bitmap routeBitmap = CameraUtil.rotate(bitPreView, roate);
-
-            // 设置预览图显示
-            RelativeLayout.LayoutParams layoutPara = new LayoutParams(
-                    mPreview.getWidth(), mPreview.getHeight());
-            takePreview.setLayoutParams(layoutPara);
-            takePreview.setImageBitmap(routeBitmap);
-            CameraUtil.fadeIn(takePreview);
+
+            final Location location = mCaptureLocation;
+            CaptureWriter.ExifEditor exifEditor = null;
+            if (location != null) {
+                exifEditor = new CaptureWriter.ExifEditor() {
+                    @Override
+                    public void editExif(ExifWriter exif) {
+                        CommonUtil.setGps(exif, location.getLatitude(),
+                                location.getLongitude());
+                    }
+                };
+            }
+
+            try {
+                // 把数据写入到文件中，等待写入的照片过多时会在这里阻塞
+                mCaptureWriter.submit(data, pictureFile, exifEditor,
+                        new CaptureWriter.OnCaptureSavedListener() {
+
+                            @Override
+                            public void onCaptureSaved(final File file, byte[] data) {
+                                int degrees = Exif.getOrientation(data);
+                                Log.i("CameraDemo", "exif data degrees" + degrees);
+                                // 在后台解码压缩后的预览图，解码时同时完成旋转
+                                mThumbnailService.request(data, width, height,
+                                        (360 - roate) % 360 + degrees,
+                                        new ThumbnailService.OnThumbnailListener() {
+                                            @Override
+                                            public void onThumbnailReady(Bitmap thumbnail) {
+                                                if (thumbnail == null) {
+                                                    // 照片已经保存，只是没有预览图，直接回到拍照界面
+                                                    Log.w(TAG, "no thumbnail for " + file);
+                                                    resetCamera();
+                                                    return;
+                                                }
+                                                showTakePreview(thumbnail);
+                                                showPostCaptureAlert();
+                                            }
+                                        });
+                            }
+
+                            @Override
+                            public void onCaptureFailed(File file, IOException e) {
+                                Log.e(TAG, "write picture failed " + file, e);
+                                runOnUiThread(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        resetCamera();
+                                    }
+                                });
+                            }
+                        });
+            } catch (InterruptedException e) {
+                Log.e(TAG, "interrupted while waiting for capture writer", e);
+                Thread.currentThread().interrupt();
+            }
         }
 
     };
 
     /**
-     * 把照片的数据数组写入到文件中
+     * 设置预览图显示
+     * 
+     * @param routeBitmap
+     */
+    private void showTakePreview(Bitmap routeBitmap) {
+        RelativeLayout.LayoutParams layoutPara = new LayoutParams(
+                mPreview.getWidth(), mPreview.getHeight());
+        takePreview.setLayoutParams(layoutPara);
+        takePreview.setImageBitmap(routeBitmap);
+        CameraUtil.fadeIn(takePreview);
+        // 上一张预览图已经不再显示，下次生成预览图时重复使用
+        mThumbnailService.release(mPreviewBitmap);
+        mPreviewBitmap = routeBitmap;
+    }
+
+    /**
+     * 生成照片的文件，照片以拍照时间命名
      * 
-     * @param data
      * @return
-     * @throws FileNotFoundException
-     * @throws IOException
      */
-    private boolean writeDataToFile(byte[] data) {
-        boolean writeFlag = false;
-        FileOutputStream outStream = null;
+    private File createPictureFile() {
         File fileDir = new File(fileDic);
         if (!fileDir.exists()) {
             fileDir.mkdir();
         }
         String fileName = fileDic + "/" + CommonUtil.getTime(System.currentTimeMillis(), null)
                 + ".jpg";
-        currentFile = fileName;
-        try {
-            outStream = new FileOutputStream(fileName);
-            outStream.write(data);
-            outStream.flush();
-            showPostCaptureAlert();
-            writeFlag = true;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (outStream != null) {
-                try {
-                    outStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        return writeFlag;
+        return new File(fileName);
     }
 
     /**
@@ -504,9 +588,12 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
         if (camera == null) {
             return;
         }
-        Camera.Parameters params = camera.getParameters();
-        setRotationParameter(params, cameraCurrentlyLocked, mOrientation);
-        camera.setParameters(params);
+        synchronized (mParameters) {
+            Camera.Parameters params = mParameters.getParameters();
+            setRotationParameter(params, cameraCurrentlyLocked, mOrientation);
+            // 拍照之前在相机线程中与没有提交的缩放一起生效
+            mParameters.markDirty(CameraParameterCache.KEY_ROTATION);
+        }
     }
 
     /**
@@ -533,17 +620,14 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
         parameters.setRotation(rotation);
     }
 
-    @Override
-    public void onZoomChange(int zoomValue, boolean stopped, Camera camera) {
-
-    }
-
     @Override
     public void onProgressChanged(SeekBar seekBar, int progress,
             boolean fromUser) {
-        Parameters param = mCamera.getParameters();
-        param.setZoom(progress);
-        mCamera.setParameters(param);
+        // 手势缩放时由updateSeekBar改变进度，缩放已经请求过了
+        ZoomController zoomController = mPreview == null ? null : mPreview.getZoomController();
+        if (fromUser && zoomController != null) {
+            zoomController.zoomTo(progress);
+        }
     }
 
     @Override
@@ -576,13 +660,16 @@ public class CameraActivity extends Activity implements OnZoomChangeListener,
     }
 
     private void changeCameraSize(CameraSizeBean cameraSizeBean) {
-        Size selectSize = cameraSizeBean.getSize();
-        Parameters cameraParam = mCamera.getParameters();
+        if (mParameters == null) {
+            return;
+        }
+        Size currentSize = mParameters.getPictureSize();
 
-        if (!cameraParam.getPictureSize().equals(selectSize)) {
-            cameraParam.setPictureSize(selectSize.width, selectSize.height);
+        if (currentSize.width != cameraSizeBean.getWidth()
+                || currentSize.height != cameraSizeBean.getHeight()) {
+            mParameters.setPictureSize(cameraSizeBean.getWidth(), cameraSizeBean.getHeight());
             // cameraParam.setPreviewSize(selectSize.width, selectSize.height);
-            mCamera.setParameters(cameraParam);
+            // 在相机线程中自动提交
             mPreview.invalidate();
             mPreview.requestLayout();
         }
@@ -0,0 +1,321 @@
+package com.example.testdemo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 每个相机的能力缓存，保存支持的预览与照片尺寸、帧率范围、是否支持对焦与测光区域，以及选择的预览尺寸。
+ * 相机的能力只随系统版本改变，缓存以二进制文件保存，文件中记录系统的指纹(Build.FINGERPRINT)，
+ * 指纹不同时丢弃整个缓存。第一次使用时才读取文件，之后打开相机不需要再解析参数字符串中的列表。
+ * 可以在多个线程中使用。
+ */
+public class CameraCapabilityCache {
+
+    public static final String CACHE_FILE_NAME = "camera_capabilities";
+    private static final int MAGIC = 0x43434150;
+    private static final int VERSION = 1;
+
+    /**
+     * 一个相机的能力，不可修改
+     */
+    public static class Capabilities {
+        private final int[] mPreviewWidths;
+        private final int[] mPreviewHeights;
+        private final int[] mPictureWidths;
+        private final int[] mPictureHeights;
+        private final int[] mFpsMins;
+        private final int[] mFpsMaxs;
+        private final boolean mFocusAreaSupported;
+        private final boolean mMeteringAreaSupported;
+        private final int mPreviewWidth;
+        private final int mPreviewHeight;
+
+        /**
+         * 照片尺寸按高度再按宽度从小到大排序，数组之后不能再修改
+         * 
+         * @param previewWidths 支持的预览宽度
+         * @param previewHeights 支持的预览高度，与宽度一一对应
+         * @param pictureWidths 支持的照片宽度
+         * @param pictureHeights 支持的照片高度
+         * @param fpsMins 支持的帧率范围的最小值，乘以1000
+         * @param fpsMaxs 支持的帧率范围的最大值，乘以1000
+         * @param focusAreaSupported 是否支持对焦区域
+         * @param meteringAreaSupported 是否支持测光区域
+         */
+        public Capabilities(int[] previewWidths, int[] previewHeights, int[] pictureWidths,
+                int[] pictureHeights, int[] fpsMins, int[] fpsMaxs, boolean focusAreaSupported,
+                boolean meteringAreaSupported) {
+            this(previewWidths, previewHeights, pictureWidths, pictureHeights, fpsMins, fpsMaxs,
+                    focusAreaSupported, meteringAreaSupported, 0, 0);
+            sortBySize(mPictureWidths, mPictureHeights);
+        }
+
+        private Capabilities(int[] previewWidths, int[] previewHeights, int[] pictureWidths,
+                int[] pictureHeights, int[] fpsMins, int[] fpsMaxs, boolean focusAreaSupported,
+                boolean meteringAreaSupported, int previewWidth, int previewHeight) {
+            if (previewWidths.length != previewHeights.length
+                    || pictureWidths.length != pictureHeights.length
+                    || fpsMins.length != fpsMaxs.length) {
+                throw new IllegalArgumentException("Mismatched widths and heights");
+            }
+            mPreviewWidths = previewWidths;
+            mPreviewHeights = previewHeights;
+            mPictureWidths = pictureWidths;
+            mPictureHeights = pictureHeights;
+            mFpsMins = fpsMins;
+            mFpsMaxs = fpsMaxs;
+            mFocusAreaSupported = focusAreaSupported;
+            mMeteringAreaSupported = meteringAreaSupported;
+            mPreviewWidth = previewWidth;
+            mPreviewHeight = previewHeight;
+        }
+
+        /**
+         * 返回选择了预览尺寸的新对象
+         * 
+         * @param width
+         * @param height
+         * @return
+         */
+        public Capabilities withPreviewSize(int width, int height) {
+            return new Capabilities(mPreviewWidths, mPreviewHeights, mPictureWidths,
+                    mPictureHeights, mFpsMins, mFpsMaxs, mFocusAreaSupported,
+                    mMeteringAreaSupported, width, height);
+        }
+
+        /**
+         * @return 支持的预览宽度，不能修改
+         */
+        public int[] getPreviewWidths() {
+            return mPreviewWidths;
+        }
+
+        /**
+         * @return 支持的预览高度，不能修改
+         */
+        public int[] getPreviewHeights() {
+            return mPreviewHeights;
+        }
+
+        /**
+         * @return 支持的照片宽度，从小到大排列，不能修改
+         */
+        public int[] getPictureWidths() {
+            return mPictureWidths;
+        }
+
+        /**
+         * @return 支持的照片高度，不能修改
+         */
+        public int[] getPictureHeights() {
+            return mPictureHeights;
+        }
+
+        public int getFpsRangeCount() {
+            return mFpsMins.length;
+        }
+
+        public int getFpsMin(int index) {
+            return mFpsMins[index];
+        }
+
+        public int getFpsMax(int index) {
+            return mFpsMaxs[index];
+        }
+
+        public boolean isFocusAreaSupported() {
+            return mFocusAreaSupported;
+        }
+
+        public boolean isMeteringAreaSupported() {
+            return mMeteringAreaSupported;
+        }
+
+        /**
+         * @return 选择的预览宽度，还没有选择时为0
+         */
+        public int getPreviewWidth() {
+            return mPreviewWidth;
+        }
+
+        /**
+         * @return 选择的预览高度，还没有选择时为0
+         */
+        public int getPreviewHeight() {
+            return mPreviewHeight;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeSizes(out, mPreviewWidths, mPreviewHeights);
+            writeSizes(out, mPictureWidths, mPictureHeights);
+            writeSizes(out, mFpsMins, mFpsMaxs);
+            out.writeBoolean(mFocusAreaSupported);
+            out.writeBoolean(mMeteringAreaSupported);
+            out.writeInt(mPreviewWidth);
+            out.writeInt(mPreviewHeight);
+        }
+
+        static Capabilities read(DataInputStream in) throws IOException {
+            int[][] preview = readSizes(in);
+            int[][] picture = readSizes(in);
+            int[][] fps = readSizes(in);
+            return new Capabilities(preview[0], preview[1], picture[0], picture[1], fps[0],
+                    fps[1], in.readBoolean(), in.readBoolean(), in.readInt(), in.readInt());
+        }
+
+        private static void writeSizes(DataOutputStream out, int[] first, int[] second)
+                throws IOException {
+            out.writeInt(first.length);
+            for (int i = 0; i < first.length; i++) {
+                out.writeInt(first[i]);
+                out.writeInt(second[i]);
+            }
+        }
+
+        private static int[][] readSizes(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            if (count < 0 || count > 1024) {
+                throw new IOException("Invalid count " + count);
+            }
+            int[][] sizes = new int[2][count];
+            for (int i = 0; i < count; i++) {
+                sizes[0][i] = in.readInt();
+                sizes[1][i] = in.readInt();
+            }
+            return sizes;
+        }
+
+        /**
+         * 按高度再按宽度从小到大排序，列表只有几十项，直接插入排序
+         */
+        private static void sortBySize(int[] widths, int[] heights) {
+            for (int i = 1; i < widths.length; i++) {
+                int width = widths[i];
+                int height = heights[i];
+                int j = i - 1;
+                while (j >= 0 && (heights[j] > height
+                        || (heights[j] == height && widths[j] > width))) {
+                    widths[j + 1] = widths[j];
+                    heights[j + 1] = heights[j];
+                    j--;
+                }
+                widths[j + 1] = width;
+                heights[j + 1] = height;
+            }
+        }
+    }
+
+    private final File mFile;
+    private final String mFingerprint;
+    // key为相机id，第一次使用时读取
+    private Map<Integer, Capabilities> mEntries;
+    private boolean mDirty;
+
+    /**
+     * @param file 缓存文件
+     * @param fingerprint 系统的指纹，与文件中的不同时丢弃缓存
+     */
+    public CameraCapabilityCache(File file, String fingerprint) {
+        mFile = file;
+        mFingerprint = fingerprint == null ? "" : fingerprint;
+    }
+
+    /**
+     * @param cameraId 相机id
+     * @return 缓存的能力，没有缓存时为null
+     */
+    public synchronized Capabilities get(int cameraId) {
+        ensureLoaded();
+        return mEntries.get(cameraId);
+    }
+
+    /**
+     * 更新一个相机的能力，调用 {@link #save()} 以后才写入文件
+     * 
+     * @param cameraId 相机id
+     * @param capabilities
+     */
+    public synchronized void put(int cameraId, Capabilities capabilities) {
+        ensureLoaded();
+        mEntries.put(cameraId, capabilities);
+        mDirty = true;
+    }
+
+    /**
+     * 有修改时保存缓存文件，先写入临时文件再重命名
+     * 
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        if (!mDirty) {
+            return;
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mFingerprint);
+            out.writeInt(mEntries.size());
+            for (Map.Entry<Integer, Capabilities> entry : mEntries.entrySet()) {
+                out.writeInt(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Can not rename " + temp + " to " + mFile);
+        }
+        mDirty = false;
+    }
+
+    private void ensureLoaded() {
+        if (mEntries == null) {
+            mEntries = load(mFile, mFingerprint);
+        }
+    }
+
+    private static Map<Integer, Capabilities> load(File file, String fingerprint) {
+        Map<Integer, Capabilities> entries = new HashMap<Integer, Capabilities>();
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return entries;
+        }
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !fingerprint.equals(in.readUTF())) {
+                // 系统已经升级，相机的能力可能改变
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int cameraId = in.readInt();
+                entries.put(cameraId, Capabilities.read(in));
+            }
+        } catch (IOException e) {
+            // 缓存文件损坏，重新读取相机参数
+            entries.clear();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return entries;
+    }
+}
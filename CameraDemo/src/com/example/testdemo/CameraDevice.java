@@ -0,0 +1,404 @@
+package com.example.testdemo;
+
+import android.hardware.Camera;
+import android.hardware.Camera.Parameters;
+import android.hardware.Camera.PictureCallback;
+import android.hardware.Camera.Size;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 在单独的相机线程中使用Camera。打开、预览、拍照与释放都作为命令按提交的顺序在相机线程中执行，
+ * 主线程提交以后立即返回，打开相机需要的几百毫秒不会阻塞界面。
+ * 相机在相机线程中打开，预览帧、对焦等回调也在相机线程中执行；打开与拍照的结果转到主线程回调。
+ * 每个命令返回Future，失败时Future中是异常，同时记录日志。
+ * 每次打开相机时重新开始 {@link StartupTimer}，记录打开与读取参数的时间。
+ * 相机的能力从 {@link CameraCapabilityCache} 中读取，没有缓存时从参数中解析一次并保存。
+ */
+public class CameraDevice {
+
+    private static final String TAG = "CameraDevice";
+
+    /**
+     * 打开相机的结果，在主线程中执行。打开完成之前已经调用了 {@link #release()} 时不会回调
+     */
+    public interface OnOpenListener {
+        /**
+         * @param device 已经打开相机的设备，可以取得Camera与参数缓存
+         */
+        void onCameraOpened(CameraDevice device);
+
+        /**
+         * @param e 打开失败的原因，例如相机被其他应用占用
+         */
+        void onCameraOpenFailed(RuntimeException e);
+    }
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final StartupTimer mStartupTimer = new StartupTimer();
+    private final CameraCapabilityCache mCapabilityCache;
+    // 只在相机线程中修改
+    private volatile Camera mCamera;
+    private volatile CameraParameterCache mParameters;
+    private volatile CameraCapabilityCache.Capabilities mCapabilities;
+    private int mCameraId;
+    // 每次打开与释放加1，主线程用它判断打开的结果是否已经过期
+    private int mGeneration;
+
+    /**
+     * @param capabilityCache 相机能力的缓存，在相机线程中读取与保存
+     */
+    public CameraDevice(CameraCapabilityCache capabilityCache) {
+        mCapabilityCache = capabilityCache;
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * @return 相机线程的looper，需要在相机线程中执行的对象可以使用
+     */
+    public Looper getLooper() {
+        return mThread.getLooper();
+    }
+
+    /**
+     * @return 最近一次打开相机的各阶段时间，收到第一帧等之后的阶段由使用者记录
+     */
+    public StartupTimer getStartupTimer() {
+        return mStartupTimer;
+    }
+
+    /**
+     * @return 已经打开的相机，没有打开时为null
+     */
+    public Camera getCamera() {
+        return mCamera;
+    }
+
+    /**
+     * @return 相机的参数缓存，没有打开时为null
+     */
+    public CameraParameterCache getParameters() {
+        return mParameters;
+    }
+
+    /**
+     * @return 相机的能力，没有打开时为null
+     */
+    public CameraCapabilityCache.Capabilities getCapabilities() {
+        return mCapabilities;
+    }
+
+    /**
+     * 记录选择的预览尺寸，下次打开相机时直接使用，只能在相机线程中调用
+     *
+     * @param width
+     * @param height
+     */
+    public void updatePreviewSize(int width, int height) {
+        CameraCapabilityCache.Capabilities capabilities = mCapabilities;
+        if (capabilities == null || (capabilities.getPreviewWidth() == width
+                && capabilities.getPreviewHeight() == height)) {
+            return;
+        }
+        mCapabilities = capabilities.withPreviewSize(width, height);
+        mCapabilityCache.put(mCameraId, mCapabilities);
+        saveCapabilities();
+    }
+
+    /**
+     * 在相机线程中打开相机并读取一次参数
+     * 
+     * @param cameraId 相机id，小于0时打开第一个后置相机
+     * @param listener 结果回调，可以为null
+     * @return
+     */
+    public Future<Camera> open(final int cameraId, final OnOpenListener listener) {
+        final int generation = ++mGeneration;
+        mStartupTimer.start();
+        return submit(new Callable<Camera>() {
+            @Override
+            public Camera call() {
+                Camera camera = null;
+                try {
+                    if (mCamera != null) {
+                        releaseCamera();
+                    }
+                    // 能力缓存以真实的相机id为key，与预览使用的id一致
+                    int id = cameraId < 0 ? findBackCamera() : cameraId;
+                    if (id < 0) {
+                        throw new RuntimeException("No back-facing camera");
+                    }
+                    camera = Camera.open(id);
+                    mStartupTimer.mark(StartupTimer.MARK_OPEN);
+                    mParameters = new CameraParameterCache(camera, getLooper());
+                    mStartupTimer.mark(StartupTimer.MARK_PARAMETERS);
+                    CameraCapabilityCache.Capabilities capabilities =
+                            mCapabilityCache.get(id);
+                    if (capabilities == null) {
+                        capabilities = createCapabilities(mParameters.getParameters());
+                        mCapabilityCache.put(id, capabilities);
+                        saveCapabilities();
+                    }
+                    mCapabilities = capabilities;
+                    mCameraId = id;
+                    mCamera = camera;
+                } catch (final RuntimeException e) {
+                    if (camera != null) {
+                        // 读取参数失败，相机还没有交给mCamera，这里不释放会一直占用相机
+                        if (mParameters != null) {
+                            mParameters.release();
+                            mParameters = null;
+                        }
+                        camera.release();
+                    }
+                    notifyOpen(generation, listener, e);
+                    throw e;
+                }
+                notifyOpen(generation, listener, null);
+                return mCamera;
+            }
+        });
+    }
+
+    /**
+     * 设置预览的surface并开始预览
+     * 
+     * @param holder 为null时只开始预览
+     * @return
+     */
+    public Future<Void> startPreview(final SurfaceHolder holder) {
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null) {
+                    return;
+                }
+                if (holder != null) {
+                    try {
+                        mCamera.setPreviewDisplay(holder);
+                    } catch (IOException e) {
+                        throw new RuntimeException("setPreviewDisplay failed", e);
+                    }
+                }
+                mCamera.startPreview();
+            }
+        });
+    }
+
+    public Future<Void> stopPreview() {
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera != null) {
+                    mCamera.stopPreview();
+                }
+            }
+        });
+    }
+
+    /**
+     * 拍照，照片数据在主线程中回调，回调之前已经释放或者重新打开相机时丢弃
+     * 
+     * @param jpeg 照片数据的回调
+     * @return
+     */
+    public Future<Void> takePicture(final PictureCallback jpeg) {
+        final int generation = mGeneration;
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null) {
+                    return;
+                }
+                // 提交拍照之前还没有提交的参数，例如旋转角度
+                mParameters.flush();
+                mCamera.takePicture(null, null, new PictureCallback() {
+                    @Override
+                    public void onPictureTaken(final byte[] data, final Camera camera) {
+                        mMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                // 释放命令排在其他命令之后，相机可能还没有释放
+                                if (generation == mGeneration && mCamera == camera) {
+                                    jpeg.onPictureTaken(data, camera);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 在相机线程中执行任意命令，排在之前提交的命令之后
+     * 
+     * @param command
+     * @return
+     */
+    public Future<Void> execute(final Runnable command) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                command.run();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 在之前提交的命令都执行完以后停止预览并释放相机，之后可以重新打开。
+     * 还没有回调的打开结果不会再回调
+     * 
+     * @return
+     */
+    public Future<Void> release() {
+        mGeneration++;
+        return execute(new Runnable() {
+            @Override
+            public void run() {
+                releaseCamera();
+            }
+        });
+    }
+
+    /**
+     * 释放相机并结束相机线程，之后不能再使用
+     */
+    public void quit() {
+        release();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mThread.quit();
+            }
+        });
+    }
+
+    private void releaseCamera() {
+        Camera camera = mCamera;
+        if (camera == null) {
+            return;
+        }
+        mCamera = null;
+        mParameters.release();
+        mParameters = null;
+        mCapabilities = null;
+        camera.stopPreview();
+        camera.release();
+    }
+
+    /**
+     * 与Camera.open()相同，找到第一个后置相机
+     * 
+     * @return 没有后置相机时返回-1
+     */
+    private static int findBackCamera() {
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        for (int i = 0; i < Camera.getNumberOfCameras(); i++) {
+            Camera.getCameraInfo(i, info);
+            if (info.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void saveCapabilities() {
+        try {
+            mCapabilityCache.save();
+        } catch (IOException e) {
+            // 下次打开相机时重新解析
+            Log.w(TAG, "save camera capabilities failed", e);
+        }
+    }
+
+    /**
+     * 从相机参数中解析相机的能力，只在没有缓存时执行
+     */
+    private static CameraCapabilityCache.Capabilities createCapabilities(Parameters parameters) {
+        List<Size> previewSizes = parameters.getSupportedPreviewSizes();
+        int[] previewWidths = new int[previewSizes.size()];
+        int[] previewHeights = new int[previewSizes.size()];
+        for (int i = 0; i < previewWidths.length; i++) {
+            previewWidths[i] = previewSizes.get(i).width;
+            previewHeights[i] = previewSizes.get(i).height;
+        }
+        List<Size> pictureSizes = parameters.getSupportedPictureSizes();
+        int pictureCount = pictureSizes == null ? 0 : pictureSizes.size();
+        int[] pictureWidths = new int[pictureCount];
+        int[] pictureHeights = new int[pictureCount];
+        for (int i = 0; i < pictureCount; i++) {
+            pictureWidths[i] = pictureSizes.get(i).width;
+            pictureHeights[i] = pictureSizes.get(i).height;
+        }
+        List<int[]> fpsRanges = parameters.getSupportedPreviewFpsRange();
+        int fpsCount = fpsRanges == null ? 0 : fpsRanges.size();
+        int[] fpsMins = new int[fpsCount];
+        int[] fpsMaxs = new int[fpsCount];
+        for (int i = 0; i < fpsCount; i++) {
+            fpsMins[i] = fpsRanges.get(i)[Parameters.PREVIEW_FPS_MIN_INDEX];
+            fpsMaxs[i] = fpsRanges.get(i)[Parameters.PREVIEW_FPS_MAX_INDEX];
+        }
+        return new CameraCapabilityCache.Capabilities(previewWidths, previewHeights,
+                pictureWidths, pictureHeights, fpsMins, fpsMaxs,
+                CameraUtil.isFocusAreaSupported(parameters),
+                CameraUtil.isMeteringAreaSupported(parameters));
+    }
+
+    private void notifyOpen(final int generation, final OnOpenListener listener,
+            final RuntimeException error) {
+        if (listener == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration) {
+                    // 已经释放或者重新打开
+                    return;
+                }
+                if (error == null) {
+                    listener.onCameraOpened(CameraDevice.this);
+                } else {
+                    listener.onCameraOpenFailed(error);
+                }
+            }
+        });
+    }
+
+    private <T> Future<T> submit(Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<T>(callable) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "camera command failed", e.getCause());
+                }
+            }
+        };
+        if (!mHandler.post(task)) {
+            task.cancel(false);
+        }
+        return task;
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.testdemo;
+
+import android.hardware.Camera;
+import android.hardware.Camera.Parameters;
+import android.hardware.Camera.Size;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 缓存相机参数。Camera.getParameters()每次都要让驱动把所有参数拼成字符串再重新解析，
+ * 这里只在打开相机时读取一次，之后的读取都使用缓存的参数。
+ * 修改的参数先记录下来，在一帧的时间内合并成一次setParameters，连续的缩放只会提交最后的值。
+ * 对焦、拍照之前需要参数立即生效时调用 {@link #flush()}。
+ * 可以在多个线程中使用，直接修改 {@link #getParameters()} 时需要先对这个对象加锁。
+ * 自动提交在构造时指定的looper中执行，相机在 {@link CameraDevice} 中打开时使用相机线程。
+ */
+public class CameraParameterCache {
+
+    private static final String TAG = "CameraParameterCache";
+    // 合并修改的时间，约为一帧
+    public static final int FLUSH_INTERVAL_MS = 33;
+
+    public static final String KEY_ZOOM = "zoom";
+    public static final String KEY_FOCUS_MODE = "focus-mode";
+    public static final String KEY_FOCUS_AREAS = "focus-areas";
+    public static final String KEY_METERING_AREAS = "metering-areas";
+    public static final String KEY_ROTATION = "rotation";
+    public static final String KEY_PICTURE_SIZE = "picture-size";
+
+    /**
+     * 每次提交参数以后回调，在主线程中执行
+     */
+    public interface OnFlushListener {
+        /**
+         * @param success 相机是否接受了参数，不接受时缓存已经重新读取
+         */
+        void onFlush(boolean success);
+    }
+
+    // 执行自动提交
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Set<String> mDirtyKeys = new HashSet<String>();
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled = false;
+            flush();
+        }
+    };
+    private Camera mCamera;
+    private Parameters mParameters;
+    private OnFlushListener mFlushListener;
+    private boolean mFlushScheduled;
+    // 打开相机以后不会改变的值
+    private boolean mZoomSupported;
+    private int mMaxZoom;
+
+    /**
+     * @param camera 已经打开的相机，在这里读取一次参数
+     * @param looper 自动提交参数的线程
+     */
+    public CameraParameterCache(Camera camera, Looper looper) {
+        mCamera = camera;
+        mHandler = new Handler(looper);
+        reload();
+    }
+
+    /**
+     * 缓存的参数。需要在synchronized (cache)中修改，
+     * 修改以后调用 {@link #markDirty(String)} 或者 {@link #commit()}
+     * 
+     * @return
+     */
+    public synchronized Parameters getParameters() {
+        return mParameters;
+    }
+
+    public synchronized boolean isZoomSupported() {
+        return mZoomSupported;
+    }
+
+    public synchronized int getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    public synchronized int getZoom() {
+        return mZoomSupported ? mParameters.getZoom() : 0;
+    }
+
+    public synchronized Size getPreviewSize() {
+        return mParameters.getPreviewSize();
+    }
+
+    public synchronized Size getPictureSize() {
+        return mParameters.getPictureSize();
+    }
+
+    public synchronized int getPreviewFormat() {
+        return mParameters.getPreviewFormat();
+    }
+
+    /**
+     * 设置缩放，超出范围时取最近的值，与当前值相同时不会提交
+     * 
+     * @param zoom
+     * @return 实际设置的值
+     */
+    public synchronized int setZoom(int zoom) {
+        if (!mZoomSupported) {
+            return 0;
+        }
+        zoom = CameraUtil.clamp(zoom, 0, mMaxZoom);
+        if (zoom != mParameters.getZoom()) {
+            mParameters.setZoom(zoom);
+            markDirty(KEY_ZOOM);
+        }
+        return zoom;
+    }
+
+    /**
+     * 相机自己改变了缩放时同步缓存，例如平滑缩放，不会提交
+     * 
+     * @param zoom
+     */
+    public synchronized void onZoomChanged(int zoom) {
+        if (mZoomSupported) {
+            mParameters.setZoom(zoom);
+        }
+    }
+
+    /**
+     * 设置照片的尺寸，与当前值相同时不会提交
+     * 
+     * @param width
+     * @param height
+     */
+    public synchronized void setPictureSize(int width, int height) {
+        Size size = mParameters.getPictureSize();
+        if (size == null || size.width != width || size.height != height) {
+            mParameters.setPictureSize(width, height);
+            markDirty(KEY_PICTURE_SIZE);
+        }
+    }
+
+    public synchronized void setOnFlushListener(OnFlushListener listener) {
+        mFlushListener = listener;
+    }
+
+    /**
+     * 记录修改过的参数，一帧以内没有提交时自动提交
+     * 
+     * @param key 参数名
+     */
+    public synchronized void markDirty(String key) {
+        mDirtyKeys.add(key);
+        if (!mFlushScheduled && mCamera != null) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, FLUSH_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * 有修改过的参数时立即提交，相机不接受时重新读取参数
+     * 
+     * @return 是否提交成功，没有修改时返回true
+     */
+    public synchronized boolean flush() {
+        if (mDirtyKeys.isEmpty()) {
+            return true;
+        }
+        String keys = mDirtyKeys.toString();
+        try {
+            commit();
+            return true;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "setParameters failed for " + keys, e);
+            return false;
+        }
+    }
+
+    /**
+     * 不管有没有修改都提交所有的参数，相机不接受时重新读取参数再抛出异常
+     */
+    public synchronized void commit() {
+        cancelFlush();
+        if (mCamera == null) {
+            return;
+        }
+        boolean success = false;
+        try {
+            mCamera.setParameters(mParameters);
+            success = true;
+        } catch (RuntimeException e) {
+            // 缓存的参数已经与相机不一致
+            reload();
+            throw e;
+        } finally {
+            mDirtyKeys.clear();
+            notifyFlush(success);
+        }
+    }
+
+    /**
+     * 相机释放之前调用，丢弃没有提交的修改
+     */
+    public synchronized void release() {
+        cancelFlush();
+        mDirtyKeys.clear();
+        mCamera = null;
+    }
+
+    private void reload() {
+        mParameters = mCamera.getParameters();
+        mZoomSupported = mParameters.isZoomSupported();
+        mMaxZoom = mZoomSupported ? mParameters.getMaxZoom() : 0;
+    }
+
+    private void notifyFlush(final boolean success) {
+        final OnFlushListener listener = mFlushListener;
+        if (listener == null) {
+            return;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            listener.onFlush(success);
+        } else {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFlush(success);
+                }
+            });
+        }
+    }
+
+    private void cancelFlush() {
+        if (mFlushScheduled) {
+            mFlushScheduled = false;
+            mHandler.removeCallbacks(mFlushRunnable);
+        }
+    }
+}
@@ -5,8 +5,6 @@ import android.app.Activity;
 import android.content.Context;
 import android.graphics.Rect;
 import android.hardware.Camera;
-import android.hardware.Camera.Area;
-import android.hardware.Camera.AutoFocusCallback;
 import android.hardware.Camera.Parameters;
 import android.hardware.Camera.Size;
 import android.util.AttributeSet;
@@ -18,20 +16,27 @@ import android.view.SurfaceView;
 import android.view.View;
 import android.view.View.OnTouchListener;
 import android.view.ViewGroup;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
-        OnTouchListener, AutoFocusCallback, ScaleGestureDetector.OnScaleGestureListener {
+        OnTouchListener, ScaleGestureDetector.OnScaleGestureListener {
     private final String TAG = "Preview";
     public static final String RECORDING_HINT = "recording-hint";
     public static final String FALSE = "false";
+    // surface销毁时等待相机线程停止预览的最长时间
+    private static final int STOP_PREVIEW_TIMEOUT_MS = 1000;
     private SurfaceView mSurfaceView;
     private SurfaceHolder mHolder;
+    private CameraDevice mDevice;
+    // 最近一次设置的相机设备，setCamera(null)以后仍然保留，surface销毁时通过它等待相机停止预览
+    private CameraDevice mSurfaceDevice;
     private Camera mCamera;
+    private CameraParameterCache mParameters;
+    private ZoomController mZoomController;
+    private FocusScheduler mFocusScheduler;
     private int mCameraID;
-    private boolean isFocusSucc = true;
     private Context mContext;
     private ScaleGestureDetector mScale;
     private float beginSpan;
@@ -39,6 +44,9 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
     public static final int DEFAULT_CAPTURE_PIXELS = 1280 * 720;
     private int mPreviewWidth;
     private int mPreviewHeight;
+    // 计算预览尺寸时的相机，再次设置同一个相机时直接使用上次的尺寸
+    private int mPreviewSizeCameraID = -1;
+    private PreviewFrameSource mFrameSource;
 
     public CameraPreview(Context context) {
         super(context);
@@ -62,28 +70,130 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
 
         mHolder = mSurfaceView.getHolder();
         mHolder.addCallback(this);
+        mFrameSource = new PreviewFrameSource();
     }
 
     /**
-     * 设置当前使用的照相机
+     * 设置当前使用的照相机，相机的设置在相机线程中执行，完成以后重新布局。
+     * surface已经创建时在设置之后直接开始预览，暂停以后恢复时可以重复使用这个view
      * 
-     * @param camera
+     * @param device 已经打开相机的设备，为null时停止使用之前的相机
      * @param cameraID
      */
-    public void setCamera(Camera camera, int cameraID) {
-        mCamera = camera;
+    public void setCamera(CameraDevice device, int cameraID) {
+        if (mDevice != null) {
+            detach();
+        }
+        mDevice = device;
         mCameraID = cameraID;
-        if (mCamera != null) {
-            setCameraDisplayOrientation(0, mCamera);
-            Parameters cameraParam = mCamera.getParameters();
-            setupCaptureParams(cameraParam);
-            mSurfaceView.setOnTouchListener(this);
-            mScale = new ScaleGestureDetector(mContext, this);
-            if (CameraUtil.isFocusAreaSupported(cameraParam)) {
-                cameraParam.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+        if (mZoomController != null) {
+            mZoomController.release();
+            mZoomController = null;
+        }
+        if (mFocusScheduler != null) {
+            mFocusScheduler.release();
+            mFocusScheduler = null;
+        }
+        if (device == null) {
+            mCamera = null;
+            mParameters = null;
+            return;
+        }
+        mSurfaceDevice = device;
+        mCamera = device.getCamera();
+        mParameters = device.getParameters();
+        final CameraDevice cameraDevice = device;
+        final Camera camera = mCamera;
+        final CameraParameterCache parameters = mParameters;
+        final CameraCapabilityCache.Capabilities capabilities = device.getCapabilities();
+        final int previewCameraID = cameraID;
+        // 显示方向需要在主线程中读取
+        final int displayOrientation = getDisplayOrientation(0);
+        mSurfaceView.setOnTouchListener(this);
+        mScale = new ScaleGestureDetector(mContext, this);
+        device.execute(new Runnable() {
+            @Override
+            public void run() {
+                camera.setDisplayOrientation(displayOrientation);
+                try {
+                    synchronized (parameters) {
+                        Parameters cameraParam = parameters.getParameters();
+                        setupCaptureParams(cameraParam, capabilities, previewCameraID);
+                        if (capabilities.isFocusAreaSupported()) {
+                            cameraParam.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+                        }
+                        parameters.commit();
+                    }
+                } catch (RuntimeException e) {
+                    // 部分手机不接受选择的预览参数，使用相机当前的预览尺寸
+                    Log.w(TAG, "setParameters failed in setCamera", e);
+                    Size previewSize = parameters.getPreviewSize();
+                    mPreviewWidth = previewSize.width;
+                    mPreviewHeight = previewSize.height;
+                }
+                // 下次打开相机时直接使用这个尺寸
+                cameraDevice.updatePreviewSize(mPreviewWidth, mPreviewHeight);
+                try {
+                    mFrameSource.attach(camera, mPreviewWidth, mPreviewHeight,
+                            parameters.getPreviewFormat());
+                } catch (IllegalArgumentException e) {
+                    // 预览格式不能按帧大小分配缓存，只显示预览，不接收预览帧
+                    Log.w(TAG, "preview frames disabled", e);
+                }
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        requestLayout();
+                    }
+                });
             }
-            requestLayout();
+        });
+        if (sufaceCreate) {
+            // surface没有销毁时不会再回调surfaceCreated
+            device.startPreview(mHolder);
         }
+        mZoomController = new ZoomController(device);
+        mFocusScheduler = new FocusScheduler(mCamera, mParameters, capabilities,
+                device.getLooper());
+    }
+
+    /**
+     * 停止使用当前的相机，预览帧回调在相机线程中取消，排在之后的释放之前
+     */
+    private void detach() {
+        mDevice.execute(new Runnable() {
+            @Override
+            public void run() {
+                mFrameSource.detach();
+            }
+        });
+    }
+
+    /**
+     * 获取缩放控制，没有设置相机时为null
+     * 
+     * @return
+     */
+    public ZoomController getZoomController() {
+        return mZoomController;
+    }
+
+    /**
+     * 获取对焦调度，通过它取得对焦结果与延迟，没有设置相机时为null
+     * 
+     * @return
+     */
+    public FocusScheduler getFocusScheduler() {
+        return mFocusScheduler;
+    }
+
+    /**
+     * 获取预览帧数据源，通过它接收预览数据
+     * 
+     * @return
+     */
+    public PreviewFrameSource getFrameSource() {
+        return mFrameSource;
     }
 
     /**
@@ -113,19 +223,12 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
     /**
      * 切换照相机
      * 
-     * @param camera
+     * @param device 已经打开另一个相机的设备
      */
-    public void switchCamera(Camera camera) {
-        setCamera(camera, mCameraID);
-        try {
-            camera.setPreviewDisplay(mHolder);
-        } catch (IOException exception) {
-            Log.e(TAG, "IOException caused by setPreviewDisplay()", exception);
-        }
-        Camera.Parameters parameters = camera.getParameters();
-        requestLayout();
-
-        camera.setParameters(parameters);
+    public void switchCamera(CameraDevice device) {
+        // setCamera已经提交了参数，在之后的命令中设置surface
+        setCamera(device, mCameraID);
+        device.startPreview(mHolder);
     }
 
     @Override
@@ -140,8 +243,8 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        // 用来控制surface的布局
-        if (changed && getChildCount() > 0) {
+        // 用来控制surface的布局，预览尺寸在相机线程中确定以后会再次布局
+        if (getChildCount() > 0 && mPreviewWidth > 0 && mPreviewHeight > 0) {
             final View child = getChildAt(0);
 
             final int width = r - l;
@@ -168,24 +271,29 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
 
     public void surfaceCreated(SurfaceHolder holder) {
         Log.e(TAG, "surfaceCreated");
-        // 开启预览图片
-        try {
-            if (mCamera != null) {
-                holder.setType(SurfaceHolder.SURFACE_TYPE_PUSH_BUFFERS);
-                mCamera.setPreviewDisplay(holder);
-                mCamera.startPreview();
-            }
-        } catch (IOException exception) {
-            Log.e(TAG, "IOException caused by setPreviewDisplay()", exception);
+        // 开启预览图片，在相机线程中排在相机的设置之后
+        if (mDevice != null) {
+            holder.setType(SurfaceHolder.SURFACE_TYPE_PUSH_BUFFERS);
+            mDevice.startPreview(holder);
         }
         sufaceCreate = true;
     }
 
     public void surfaceDestroyed(SurfaceHolder holder) {
         Log.e(TAG, "surfaceDestroyed");
-        // 停止照相功能
-        if (mCamera != null) {
-            mCamera.stopPreview();
+        // 停止照相功能，返回以后surface不能再使用，需要等待相机线程停止预览。
+        // onPause中已经setCamera(null)时释放相机的命令排在前面，等待到相机释放为止
+        if (mSurfaceDevice != null) {
+            try {
+                mSurfaceDevice.stopPreview().get(STOP_PREVIEW_TIMEOUT_MS,
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "stopPreview failed", e.getCause());
+            } catch (TimeoutException e) {
+                Log.w(TAG, "stopPreview timeout", e);
+            }
         }
         sufaceCreate = false;
     }
@@ -204,7 +312,7 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
     }
 
     public Size getmPreviewSize() {
-        return mCamera.getParameters().getPreviewSize();
+        return mParameters.getPreviewSize();
     }
 
     @Override
@@ -225,70 +333,13 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
      * @param event
      */
     protected void focusOnTouch(MotionEvent event) {
-        if (mCamera != null) {
-            mCamera.cancelAutoFocus();
-            Parameters parameters = mCamera.getParameters();
-            if (CameraUtil.isFocusAreaSupported(parameters)) {
-                parameters.setFocusMode(Parameters.FOCUS_MODE_AUTO);
-                initializeFocusAreas(Math.round(event.getX()),
-                        Math.round(event.getY()), parameters);
-            }
-
-            if (CameraUtil.isMeteringAreaSupported(parameters)) {
-                initializeMeteringAreas(Math.round(event.getX()),
-                        Math.round(event.getY()), parameters);
-            }
-            mCamera.setParameters(parameters);
-
-            // 三星i9268 出现错误
-            mCamera.autoFocus(this);
-        }
-    }
-
-    /**
-     * 把焦点设置到触摸位置附近的矩形区域
-     * 
-     * @param x
-     * @param y
-     * @param parameters
-     */
-    private void initializeFocusAreas(int x, int y, Parameters parameters) {
-        // 有时候会报数字转化错误。部分手机直接获取会报错。其中小米与nexus 4
-        // MessageQueue-JNIjava.lang.NumberFormatException: Invalid
-        // int: " 0"
-        List<Camera.Area> listFocusArea = null;
-        try {
-            listFocusArea = parameters.getFocusAreas();
-        } catch (NumberFormatException e) {
-            Log.i(TAG, "some devices parameters getfocusareas exception");
-            e.printStackTrace();
+        if (mFocusScheduler != null) {
+            int x = Math.round(event.getX());
+            int y = Math.round(event.getY());
+            // 在相机线程中依次对焦，快速点击时只保留最后一次
+            mFocusScheduler.requestFocus(calculateTapArea(100, 100, 1f, x, y),
+                    calculateTapArea(100, 100, 1.5f, x, y));
         }
-
-        Rect rect = calculateTapArea(100, 100, 1f, x, y);
-        if (listFocusArea == null) {
-            listFocusArea = new ArrayList<Camera.Area>();
-            Area touchArea = new Camera.Area(rect, 1);
-            listFocusArea.add(touchArea);
-        } else {
-            Area touchArea = listFocusArea.get(0);
-            touchArea.rect = rect;
-        }
-        parameters.setFocusAreas(listFocusArea);
-    }
-
-    /**
-     * 设置感光区域
-     * 
-     * @param x
-     * @param y
-     * @param parameters
-     */
-    private void initializeMeteringAreas(int x, int y, Parameters parameters) {
-        List<Camera.Area> listMeterArea = new ArrayList<Camera.Area>();
-        Rect rect = calculateTapArea(100, 100, 1.5f, x, y);
-        Area touchArea = new Camera.Area(rect, 1);
-        listMeterArea.add(touchArea);
-        parameters.setMeteringAreas(listMeterArea);
     }
 
     /**
@@ -333,23 +384,11 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
         return rect;
     }
 
-    @Override
-    public void onAutoFocus(boolean success, Camera camera) {
-        isFocusSucc = success;
-    }
-
     @Override
     public boolean onScale(ScaleGestureDetector detector) {
-        float currentSpan = detector.getCurrentSpan();
-        float compValue = currentSpan - beginSpan;
-        if (Math.abs(compValue) > 5) {
-            beginSpan = currentSpan;
-            int zoomSize = 0;
-            if (compValue > 0) {
-                zoomSize = gestureZoomIn();
-            } else {
-                zoomSize = gestureZoomOut();
-            }
+        if (mZoomController != null && beginSpan > 0) {
+            // 缩放倍数跟随两指距离的比例连续变化
+            int zoomSize = mZoomController.scale(detector.getCurrentSpan() / beginSpan);
             CameraActivity activity = (CameraActivity) mContext;
             activity.updateSeekBar(zoomSize);
         }
@@ -359,6 +398,9 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
     @Override
     public boolean onScaleBegin(ScaleGestureDetector detector) {
         beginSpan = detector.getCurrentSpan();
+        if (mZoomController != null) {
+            mZoomController.beginScale();
+        }
         return true;
     }
 
@@ -368,58 +410,39 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
     }
 
     /**
-     * 手势缩小
+     * 设置预览参数，尺寸与帧率都从缓存的相机能力中选择，不再解析参数中的列表
      * 
-     * @return
+     * @param parameters
+     * @param capabilities 相机的能力
+     * @param cameraID
      */
-    private int gestureZoomIn() {
-        Parameters mParameters = mCamera.getParameters();
-        if (mParameters.isZoomSupported()) {
-            int mZoomMax = mParameters.getMaxZoom();
-            int currentZoom = mParameters.getZoom();
-            if (currentZoom < mZoomMax) {
-                currentZoom++;
-                return currentZoom;
+    private void setupCaptureParams(Parameters parameters,
+            CameraCapabilityCache.Capabilities capabilities, int cameraID) {
+        if (mPreviewSizeCameraID != cameraID || mPreviewWidth <= 0 || mPreviewHeight <= 0) {
+            if (capabilities.getPreviewWidth() > 0 && capabilities.getPreviewHeight() > 0) {
+                // 之前选择过的尺寸
+                mPreviewWidth = capabilities.getPreviewWidth();
+                mPreviewHeight = capabilities.getPreviewHeight();
             } else {
-                return mZoomMax;
-            }
-        }
-        return 0;
-    }
-
-    /**
-     * 手势放大
-     * 
-     * @return
-     */
-    private int gestureZoomOut() {
-        Parameters mParameters = mCamera.getParameters();
-        if (mParameters.isZoomSupported()) {
-            int currentZoom = mParameters.getZoom();
-            if (0 < currentZoom) {
-                currentZoom--;
-                return currentZoom;
-            }
-        }
-        return 0;
-    }
-
-    private void setupCaptureParams(Parameters parameters) {
-        List<Size> supportedSizes = parameters.getSupportedPreviewSizes();
-        if (!findBestPreviewSize(supportedSizes, true, true)) {
-            Log.w(TAG, "No 4:3 ratio preview size supported.");
-            if (!findBestPreviewSize(supportedSizes, false, true)) {
-                Log.w(TAG, "Can't find a supported preview size smaller than 960x720.");
-                findBestPreviewSize(supportedSizes, false, false);
+                int[] widths = capabilities.getPreviewWidths();
+                int[] heights = capabilities.getPreviewHeights();
+                if (!findBestPreviewSize(widths, heights, true, true)) {
+                    Log.w(TAG, "No 4:3 ratio preview size supported.");
+                    if (!findBestPreviewSize(widths, heights, false, true)) {
+                        Log.w(TAG, "Can't find a supported preview size smaller than 960x720.");
+                        findBestPreviewSize(widths, heights, false, false);
+                    }
+                }
             }
+            mPreviewSizeCameraID = cameraID;
         }
         parameters.setPreviewSize(mPreviewWidth, mPreviewHeight);
 
-        List<int[]> frameRates = parameters.getSupportedPreviewFpsRange();
-        int last = frameRates.size() - 1;
-        int minFps = (frameRates.get(last))[Parameters.PREVIEW_FPS_MIN_INDEX];
-        int maxFps = (frameRates.get(last))[Parameters.PREVIEW_FPS_MAX_INDEX];
-        parameters.setPreviewFpsRange(minFps, maxFps);
+        int last = capabilities.getFpsRangeCount() - 1;
+        if (last >= 0) {
+            parameters.setPreviewFpsRange(capabilities.getFpsMin(last),
+                    capabilities.getFpsMax(last));
+        }
 
         parameters.set(RECORDING_HINT, FALSE);
 
@@ -428,34 +451,21 @@ public class CameraPreview extends ViewGroup implements SurfaceHolder.Callback,
     /**
      * 查找最好的预览图尺寸
      * 
-     * @param supportedSizes
+     * @param widths 支持的预览宽度
+     * @param heights 支持的预览高度
      * @param need4To3 是否需要4：3
      * @param needSmaller 是否需要最小
      * @return
      */
-    private boolean findBestPreviewSize(List<Size> supportedSizes, boolean need4To3,
+    private boolean findBestPreviewSize(int[] widths, int[] heights, boolean need4To3,
             boolean needSmaller) {
-        int pixelsDiff = DEFAULT_CAPTURE_PIXELS;
-        boolean hasFound = false;
-        for (Size size : supportedSizes) {
-            int h = size.height;
-            int w = size.width;
-            // we only want 4:3 format.
-            int d = DEFAULT_CAPTURE_PIXELS - h * w;
-            if (needSmaller && d < 0) { // no bigger preview than 960x720.
-                continue;
-            }
-            if (need4To3 && (h * 4 != w * 3)) {
-                continue;
-            }
-            d = Math.abs(d);
-            if (d < pixelsDiff) {
-                mPreviewWidth = w;
-                mPreviewHeight = h;
-                pixelsDiff = d;
-                hasFound = true;
-            }
+        int best = SizeUtil.findBestPreviewSize(widths, heights, DEFAULT_CAPTURE_PIXELS,
+                need4To3, needSmaller);
+        if (best < 0) {
+            return false;
         }
-        return hasFound;
+        mPreviewWidth = widths[best];
+        mPreviewHeight = heights[best];
+        return true;
     }
 }
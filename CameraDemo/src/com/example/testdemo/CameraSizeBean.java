@@ -1,27 +1,27 @@
 
 package com.example.testdemo;
 
-import android.hardware.Camera.Size;
-
 public class CameraSizeBean extends ShowTextBean {
 
-    private Size size;
+    private int width;
+    private int height;
 
-    public CameraSizeBean(Size size) {
-        this.size = size;
+    public CameraSizeBean(int width, int height) {
+        this.width = width;
+        this.height = height;
     }
 
-    public Size getSize() {
-        return size;
+    public int getWidth() {
+        return width;
     }
 
-    public void setSize(Size size) {
-        this.size = size;
+    public int getHeight() {
+        return height;
     }
 
     @Override
     public String getShowText() {
-        return size.width + "x" + size.height
+        return width + "x" + height
         // + "     "
         // + FileUtils.FormetFileSize(size.width * size.height)
         ;
@@ -139,44 +139,8 @@ public class CameraUtil {
      */
     public static int computeSampleSize(BitmapFactory.Options options,
             int minSideLength, int maxNumOfPixels) {
-        int initialSize = computeInitialSampleSize(options, minSideLength,
-                maxNumOfPixels);
-
-        int roundedSize;
-        if (initialSize <= 8) {
-            roundedSize = 1;
-            while (roundedSize < initialSize) {
-                roundedSize <<= 1;
-            }
-        } else {
-            roundedSize = (initialSize + 7) / 8 * 8;
-        }
-
-        return roundedSize;
-    }
-
-    private static int computeInitialSampleSize(BitmapFactory.Options options,
-            int minSideLength, int maxNumOfPixels) {
-        double w = options.outWidth;
-        double h = options.outHeight;
-
-        int lowerBound = (maxNumOfPixels < 0) ? 1 : (int) Math.ceil(Math.sqrt(w
-                * h / maxNumOfPixels));
-        int upperBound = (minSideLength < 0) ? 128 : (int) Math.min(
-                Math.floor(w / minSideLength), Math.floor(h / minSideLength));
-
-        if (upperBound < lowerBound) {
-            // return the larger one when there is no overlapping zone.
-            return lowerBound;
-        }
-
-        if (maxNumOfPixels < 0 && minSideLength < 0) {
-            return 1;
-        } else if (minSideLength < 0) {
-            return lowerBound;
-        } else {
-            return upperBound;
-        }
+        return SizeUtil.computeSampleSize(options.outWidth, options.outHeight,
+                minSideLength, maxNumOfPixels);
     }
 
     public static Bitmap makeBitmap(byte[] jpegData, int maxNumOfPixels) {
@@ -505,36 +469,23 @@ public class CameraUtil {
 
     public static int calculateInSampleSize(BitmapFactory.Options options,
             int reqWidth, int reqHeight) {
-        // 图片真实的尺寸
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-
-        if (height > reqHeight || width > reqWidth) {
-
-            // 计算比率
-            final int heightRatio = Math.round((float) height
-                    / (float) reqHeight);
-            final int widthRatio = Math.round((float) width / (float) reqWidth);
-
-            // 选择最小的缩放比例，
-            inSampleSize = heightRatio < widthRatio ? heightRatio : widthRatio;
-
-            final float totalPixels = width * height;
-
-            final float totalReqPixelsCap = reqWidth * reqHeight * 2;
-
-            while (totalPixels / (inSampleSize * inSampleSize) > totalReqPixelsCap) {
-                inSampleSize++;
-            }
-        }
-        return inSampleSize;
+        return SizeUtil.calculateInSampleSize(options.outWidth, options.outHeight,
+                reqWidth, reqHeight);
     }
 
     public static Bitmap decodeYUV422P(byte[] yuv422p, int width, int height)
             throws NullPointerException, IllegalArgumentException {
+        return decodeYUV422P(yuv422p, width, height, new int[width * height]);
+    }
+
+    // Same as above, but converts into the caller supplied rgb array so that
+    // repeated conversions of same sized frames do not allocate.
+    // YuvConverter's lookup tables measured no faster than this loop on a
+    // single core (see benchmarks/results/yuv-converter.txt), so the plain
+    // loop stays the default here.
+    public static Bitmap decodeYUV422P(byte[] yuv422p, int width, int height, int[] rgb)
+            throws NullPointerException, IllegalArgumentException {
         final int frameSize = width * height;
-        int[] rgb = new int[frameSize];
         for (int j = 0, yp = 0; j < height; j++) {
             int up = frameSize + (j * (width / 2)), u = 0, v = 0;
             int vp = ((int) (frameSize * 1.5) + (j * (width / 2)));
@@ -0,0 +1,207 @@
+package com.example.testdemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 照片持久化队列。所有照片数据由同一个后台线程按顺序写入文件，
+ * 排队中的照片数量超过上限时提交方会被阻塞，防止连续拍照时内存中堆积过多的jpeg数据。
+ */
+public class CaptureWriter {
+
+    /**
+     * 照片写入结果的回调，在写入线程中执行
+     */
+    public interface OnCaptureSavedListener {
+        /**
+         * 照片已经写入并同步到存储设备
+         * 
+         * @param file 照片文件
+         * @param data 照片数据
+         */
+        void onCaptureSaved(File file, byte[] data);
+
+        /**
+         * 照片写入失败
+         * 
+         * @param file 照片文件
+         * @param e 失败原因，修改exif时的运行时异常包装在IOException中
+         */
+        void onCaptureFailed(File file, IOException e);
+    }
+
+    /**
+     * 在照片写入之前修改exif，在写入线程中执行，修改后的exif与照片数据一起写入，不需要再改写文件
+     */
+    public interface ExifEditor {
+        /**
+         * @param exif 照片原有的exif，可以直接修改
+         */
+        void editExif(ExifWriter exif);
+    }
+
+    public static final int DEFAULT_MAX_PENDING = 2;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Semaphore mPending;
+
+    public CaptureWriter() {
+        this(DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param maxPending 允许同时等待写入的照片数量
+     */
+    public CaptureWriter(int maxPending) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending must be positive");
+        }
+        mPending = new Semaphore(maxPending);
+        mExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "CaptureWriter");
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * 提交一张照片，等待写入的照片已满时阻塞直到有空位
+     * 
+     * @param data 照片数据
+     * @param target 照片文件
+     * @param listener 写入结果回调，可以为null
+     * @throws InterruptedException 等待时被中断
+     */
+    public void submit(byte[] data, File target, OnCaptureSavedListener listener)
+            throws InterruptedException {
+        submit(data, target, null, listener);
+    }
+
+    /**
+     * 提交一张照片，写入之前先修改exif，等待写入的照片已满时阻塞直到有空位
+     * 
+     * @param data 照片数据
+     * @param target 照片文件
+     * @param editor 修改exif，可以为null
+     * @param listener 写入结果回调，可以为null，onCaptureSaved收到的是修改exif以后的数据
+     * @throws InterruptedException 等待时被中断
+     */
+    public void submit(final byte[] data, final File target, final ExifEditor editor,
+            final OnCaptureSavedListener listener) throws InterruptedException {
+        if (data == null || target == null) {
+            throw new NullPointerException();
+        }
+        mPending.acquire();
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] output = data;
+                    IOException failure = null;
+                    try {
+                        if (editor != null) {
+                            output = editExif(data, editor);
+                        }
+                        writeDurably(output, target);
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (RuntimeException e) {
+                        // 例如exif格式异常，同样作为写入失败回调
+                        failure = new IOException("Can not write " + target, e);
+                    } finally {
+                        // 任何失败都要归还位置，否则提交方会一直阻塞
+                        mPending.release();
+                    }
+                    if (listener == null) {
+                        return;
+                    }
+                    if (failure != null) {
+                        listener.onCaptureFailed(target, failure);
+                    } else {
+                        listener.onCaptureSaved(target, output);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            mPending.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 当前等待写入的照片数量
+     * 
+     * @return
+     */
+    public int getPendingCount() {
+        return mExecutor.getQueue().size() + mExecutor.getActiveCount();
+    }
+
+    /**
+     * 不再接收新的照片，已经提交的照片会继续写完
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * 等待已经提交的照片全部写完
+     * 
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @return true全部写完 false超时
+     * @throws InterruptedException
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * 从照片原有的exif开始修改，再替换照片中的exif
+     */
+    static byte[] editExif(byte[] data, ExifEditor editor) throws IOException {
+        ExifWriter exif = new ExifWriter(ExifReader.read(ByteBuffer.wrap(data)));
+        editor.editExif(exif);
+        return JpegExifSplicer.splice(data, exif);
+    }
+
+    /**
+     * 先写入临时文件并同步到存储设备，再重命名成目标文件，保证目标文件存在时数据是完整的
+     * 
+     * @param data 照片数据
+     * @param target 照片文件
+     * @throws IOException
+     */
+    static void writeDurably(byte[] data, File target) throws IOException {
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Can not create directory " + dir);
+        }
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+        FileOutputStream outStream = new FileOutputStream(temp);
+        try {
+            outStream.write(data);
+            outStream.flush();
+            outStream.getFD().sync();
+        } finally {
+            outStream.close();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Can not rename " + temp + " to " + target);
+        }
+    }
+}
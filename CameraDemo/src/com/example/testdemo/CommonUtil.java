@@ -2,6 +2,7 @@ package com.example.testdemo;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -10,8 +11,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import android.content.Context;
-import android.location.Location;
-import android.media.ExifInterface;
 import android.os.Environment;
 import android.os.StatFs;
 
@@ -98,7 +97,7 @@ public class CommonUtil {
 	}
 
 	/**
-	 * 写入GPS信息到图片中，其中gps信息为度分秒形式
+	 * 写入GPS信息到图片中，其中gps信息为度分秒形式，秒保留到0.001。只替换文件中的exif段，不会重新编码图片
 	 * 
 	 * @param imagePath
 	 *            图片的路径
@@ -112,48 +111,79 @@ public class CommonUtil {
 			double longtitude) {
 		try {
 			File file = new File(imagePath);
-			ExifInterface exif = new ExifInterface(file.getCanonicalPath());
-			double alat = Math.abs(latitude);
-			String dms = Location.convert(alat, Location.FORMAT_SECONDS);
-			String[] splits = dms.split(":");
-			String[] secnds = (splits[2]).split("\\.");
-			String seconds;
-			if (secnds.length == 0) {
-				seconds = splits[2];
-			} else {
-				seconds = secnds[0];
-			}
-
-			String latitudeStr = splits[0] + "/1," + splits[1] + "/1,"
-					+ seconds + "/1";
-			exif.setAttribute(ExifInterface.TAG_GPS_LATITUDE, latitudeStr);
-
-			exif.setAttribute(ExifInterface.TAG_GPS_LATITUDE_REF,
-					latitude > 0 ? "N" : "S");
+			ExifWriter exif = new ExifWriter(ExifReader.read(file));
+			setGps(exif, latitude, longtitude);
+			JpegExifSplicer.splice(file, exif);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
 
-			double alon = Math.abs(longtitude);
+	/**
+	 * 写入GPS信息到还没有保存的照片数据中，照片只需要写入文件一次
+	 * 
+	 * @param jpeg
+	 *            照片数据
+	 * @param latitude
+	 *            图片的纬度
+	 * @param longtitude
+	 *            图片的经度
+	 * @return 写入GPS信息以后的照片数据，失败时返回原来的数据
+	 */
+	public static byte[] writeGpsToJpg(byte[] jpeg, double latitude,
+			double longtitude) {
+		try {
+			ExifWriter exif = new ExifWriter(ExifReader.read(ByteBuffer
+					.wrap(jpeg)));
+			setGps(exif, latitude, longtitude);
+			return JpegExifSplicer.splice(jpeg, exif);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return jpeg;
+		}
+	}
 
-			dms = Location.convert(alon, Location.FORMAT_SECONDS);
-			splits = dms.split(":");
-			secnds = (splits[2]).split("\\.");
+	/**
+	 * 设置exif中的GPS条目，秒的精度见 {@link GpsEncoder#getDefault()}
+	 * 
+	 * @param exif
+	 *            照片的exif
+	 * @param latitude
+	 *            图片的纬度
+	 * @param longtitude
+	 *            图片的经度
+	 */
+	public static void setGps(ExifWriter exif, double latitude,
+			double longtitude) {
+		GpsEncoder.getDefault().setLatLong(exif, latitude, longtitude);
+	}
 
-			if (secnds.length == 0) {
-				seconds = splits[2];
-			} else {
-				seconds = secnds[0];
+	/**
+	 * 给目录中的所有照片写入同一个GPS信息，多张照片同时处理，不会解码图片，需要在后台线程中调用
+	 * 
+	 * @param dirPath
+	 *            照片目录的路径，包括子目录
+	 * @param latitude
+	 *            图片的纬度
+	 * @param longtitude
+	 *            图片的经度
+	 * @return 写入的照片数量，部分照片失败时不包括失败的照片，取消或者中断时返回-1
+	 */
+	public static int writeGpsToJpgDir(String dirPath, double latitude,
+			double longtitude) {
+		try {
+			GeoTagger.Result result = new GeoTagger().tag(new File(dirPath),
+					latitude, longtitude);
+			for (IOException failure : result.getFailures().values()) {
+				failure.printStackTrace();
 			}
-			String longitudeStr = splits[0] + "/1," + splits[1] + "/1,"
-					+ seconds + "/1";
-
-			exif.setAttribute(ExifInterface.TAG_GPS_LONGITUDE, longitudeStr);
-			exif.setAttribute(ExifInterface.TAG_GPS_LONGITUDE_REF,
-					longtitude > 0 ? "E" : "W");
-			exif.saveAttributes();
+			return result.getTaggedCount();
 		} catch (IOException e) {
 			e.printStackTrace();
-			return false;
+			return -1;
 		}
-		return true;
 	}
 
 	/**
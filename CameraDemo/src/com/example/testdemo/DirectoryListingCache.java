@@ -0,0 +1,189 @@
+package com.example.testdemo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 目录浏览使用的子目录列表缓存。
+ * 每个目录只列出一次，列出时同时判断每一项是否是目录，排序一次以后按目录路径缓存，
+ * 目录的修改时间没有变化时直接返回缓存，只需要读取一次目录的修改时间。
+ * 缓存按最近使用的顺序淘汰，返回一个目录的列表以后在后台线程中预先读取它的上一级目录与子目录，
+ * 前进与后退时可以直接使用缓存。
+ */
+public class DirectoryListingCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    // 每次最多预读的子目录数量
+    private static final int PREFETCH_CHILDREN = 8;
+
+    private final Comparator<String> mComparator;
+    private final int mMaxEntries;
+    private final Map<String, Listing> mCache;
+    // 已经提交到预读线程还没有完成的目录
+    private final Set<String> mPending = new HashSet<String>();
+    private ExecutorService mPrefetcher;
+
+    /**
+     * @param comparator 子目录名的排序方式，为null时按自然顺序
+     */
+    public DirectoryListingCache(Comparator<String> comparator) {
+        this(comparator, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param comparator 子目录名的排序方式，为null时按自然顺序
+     * @param maxEntries 最多缓存的目录数量
+     */
+    public DirectoryListingCache(Comparator<String> comparator, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        mComparator = comparator;
+        mMaxEntries = maxEntries;
+        mCache = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+                return size() > mMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取目录中已经排序的子目录名，并在后台预读相邻的目录
+     * 
+     * @param dir 目录
+     * @return 不存在或者不能读取时返回null，返回的列表不能修改
+     */
+    public List<String> getDirectories(File dir) {
+        List<String> dirs = load(dir);
+        if (dirs != null) {
+            prefetch(dir, dirs);
+        }
+        return dirs;
+    }
+
+    /**
+     * 清除一个目录的缓存
+     * 
+     * @param dir 目录
+     */
+    public synchronized void invalidate(File dir) {
+        mCache.remove(dir.getAbsolutePath());
+    }
+
+    /**
+     * 清除全部缓存
+     */
+    public synchronized void clear() {
+        mCache.clear();
+    }
+
+    /**
+     * 读取目录，修改时间没有变化时使用缓存
+     */
+    private List<String> load(File dir) {
+        String path = dir.getAbsolutePath();
+        long lastModified = dir.lastModified();
+        synchronized (this) {
+            Listing listing = mCache.get(path);
+            if (listing != null && lastModified != 0 && listing.mLastModified == lastModified) {
+                return listing.mDirs;
+            }
+        }
+        File[] children = dir.listFiles();
+        if (children == null) {
+            invalidate(dir);
+            return null;
+        }
+        List<String> names = new ArrayList<String>();
+        for (File child : children) {
+            if (child.isDirectory()) {
+                names.add(child.getName());
+            }
+        }
+        String[] sorted = names.toArray(new String[names.size()]);
+        Arrays.sort(sorted, mComparator);
+        List<String> dirs = Collections.unmodifiableList(Arrays.asList(sorted));
+        synchronized (this) {
+            mCache.put(path, new Listing(lastModified, dirs));
+        }
+        return dirs;
+    }
+
+    private synchronized boolean isCached(String path) {
+        return mCache.containsKey(path);
+    }
+
+    private void prefetch(File dir, List<String> dirs) {
+        List<File> targets = new ArrayList<File>(PREFETCH_CHILDREN + 1);
+        File parent = dir.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            targets.add(parent);
+        }
+        for (int i = 0; i < dirs.size() && i < PREFETCH_CHILDREN; i++) {
+            targets.add(new File(dir, dirs.get(i)));
+        }
+        for (final File target : targets) {
+            final String path = target.getAbsolutePath();
+            // 已经缓存的目录在使用时才检查修改时间，这里不再重复读取
+            if (isCached(path)) {
+                continue;
+            }
+            synchronized (mPending) {
+                if (!mPending.add(path)) {
+                    continue;
+                }
+            }
+            getPrefetcher().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load(target);
+                    } finally {
+                        synchronized (mPending) {
+                            mPending.remove(path);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized ExecutorService getPrefetcher() {
+        if (mPrefetcher == null) {
+            mPrefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "DirectoryListingCache-1");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return mPrefetcher;
+    }
+
+    private static class Listing {
+        final long mLastModified;
+        final List<String> mDirs;
+
+        Listing(long lastModified, List<String> dirs) {
+            mLastModified = lastModified;
+            mDirs = dirs;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.testdemo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 统计目录中所有文件的总大小与文件数量。
+ * 文件大小使用File.length()读取，不需要打开文件；较大的目录树拆分成多个子树在多个线程中同时统计。
+ * 可以按目录路径缓存每个目录的直接子文件统计结果，目录的修改时间没有变化时直接使用缓存，
+ * 再次统计时只需要读取每个目录的修改时间。缓存按最近使用的顺序淘汰。
+ * 注意目录的修改时间只在其中的文件新增、删除或者重命名时变化，原地改写文件内容不会改变目录的修改时间，
+ * 所以只有能在改写文件以后调用 {@link #invalidate(File)} 的使用者才应该使用缓存，
+ * {@link #getDefault()} 不使用缓存。
+ */
+public class DirectoryStats {
+
+    /**
+     * 统计结果
+     */
+    public static class Stats {
+        private final long mSize;
+        private final int mFileCount;
+
+        Stats(long size, int fileCount) {
+            mSize = size;
+            mFileCount = fileCount;
+        }
+
+        /**
+         * @return 所有文件的总字节数
+         */
+        public long getSize() {
+            return mSize;
+        }
+
+        /**
+         * @return 文件数量，不包括目录
+         */
+        public int getFileCount() {
+            return mFileCount;
+        }
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    // 拆分出的子树数量达到线程数的这个倍数以后不再继续拆分
+    private static final int SUBTREES_PER_THREAD = 4;
+
+    private static DirectoryStats sDefault;
+
+    private final int mThreadCount;
+    private final int mMaxEntries;
+    // 不使用缓存时为null
+    private final Map<String, Node> mCache;
+    private ExecutorService mExecutor;
+
+    /**
+     * 全局共享的实例，线程数为cpu核数，不使用缓存，每次都重新读取所有文件的大小
+     * 
+     * @return
+     */
+    public static synchronized DirectoryStats getDefault() {
+        if (sDefault == null) {
+            sDefault = new DirectoryStats(Runtime.getRuntime().availableProcessors(), 0);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param threadCount 统计使用的线程数，为1时只在调用线程中统计
+     */
+    public DirectoryStats(int threadCount) {
+        this(threadCount, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param threadCount 统计使用的线程数，为1时只在调用线程中统计
+     * @param maxEntries 最多缓存的目录数量，为0时不使用缓存
+     */
+    public DirectoryStats(int threadCount, int maxEntries) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative");
+        }
+        mThreadCount = threadCount;
+        mMaxEntries = maxEntries;
+        if (maxEntries == 0) {
+            mCache = null;
+            return;
+        }
+        mCache = new LinkedHashMap<String, Node>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+                return size() > mMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * 统计文件或者目录
+     * 
+     * @param file 文件或者目录
+     * @return 不存在时大小与数量都为0
+     */
+    public Stats get(File file) {
+        if (!file.isDirectory()) {
+            return file.isFile() ? new Stats(file.length(), 1) : new Stats(0, 0);
+        }
+        long size = 0;
+        int count = 0;
+        // 先在调用线程中按层展开，得到足够多的子树以后再交给线程池
+        List<File> frontier = new ArrayList<File>();
+        frontier.add(file);
+        int target = mThreadCount == 1 ? 1 : mThreadCount * SUBTREES_PER_THREAD;
+        while (!frontier.isEmpty() && frontier.size() < target) {
+            List<File> next = new ArrayList<File>();
+            for (File dir : frontier) {
+                Node node = getNode(dir);
+                size += node.mFilesSize;
+                count += node.mFileCount;
+                for (String child : node.mChildDirs) {
+                    next.add(new File(dir, child));
+                }
+            }
+            frontier = next;
+        }
+        if (frontier.isEmpty()) {
+            return new Stats(size, count);
+        }
+
+        long[] subtree = new long[2];
+        if (mThreadCount == 1) {
+            for (File dir : frontier) {
+                computeTree(dir, subtree);
+            }
+        } else {
+            List<Future<long[]>> futures = new ArrayList<Future<long[]>>(frontier.size());
+            ExecutorService executor = getExecutor();
+            for (final File dir : frontier) {
+                futures.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() {
+                        long[] result = new long[2];
+                        computeTree(dir, result);
+                        return result;
+                    }
+                }));
+            }
+            for (Future<long[]> future : futures) {
+                long[] result = await(future);
+                subtree[0] += result[0];
+                subtree[1] += result[1];
+            }
+        }
+        return new Stats(size + subtree[0], count + (int) subtree[1]);
+    }
+
+    /**
+     * 清除一个目录的缓存，目录中的文件被原地改写以后调用
+     * 
+     * @param dir 目录
+     */
+    public void invalidate(File dir) {
+        if (mCache != null) {
+            synchronized (mCache) {
+                mCache.remove(dir.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * 清除全部缓存
+     */
+    public void clear() {
+        if (mCache != null) {
+            synchronized (mCache) {
+                mCache.clear();
+            }
+        }
+    }
+
+    private void computeTree(File dir, long[] result) {
+        Node node = getNode(dir);
+        result[0] += node.mFilesSize;
+        result[1] += node.mFileCount;
+        for (String child : node.mChildDirs) {
+            computeTree(new File(dir, child), result);
+        }
+    }
+
+    /**
+     * 获取目录的直接子文件统计，修改时间没有变化时使用缓存
+     */
+    private Node getNode(File dir) {
+        String path = null;
+        long lastModified = 0;
+        if (mCache != null) {
+            path = dir.getAbsolutePath();
+            lastModified = dir.lastModified();
+            synchronized (mCache) {
+                Node node = mCache.get(path);
+                if (node != null && node.mLastModified == lastModified) {
+                    return node;
+                }
+            }
+        }
+        Node node = new Node(lastModified);
+        File[] children = dir.listFiles();
+        if (children != null) {
+            List<String> dirs = new ArrayList<String>();
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    dirs.add(child.getName());
+                } else {
+                    node.mFilesSize += child.length();
+                    node.mFileCount++;
+                }
+            }
+            node.mChildDirs = dirs.toArray(new String[dirs.size()]);
+        }
+        if (mCache != null) {
+            synchronized (mCache) {
+                mCache.put(path, node);
+            }
+        }
+        return node;
+    }
+
+    private static long[] await(Future<long[]> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newFixedThreadPool(mThreadCount, new ThreadFactory() {
+                private int mCount;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "DirectoryStats-" + (++mCount));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mExecutor;
+    }
+
+    private static class Node {
+        final long mLastModified;
+        long mFilesSize;
+        int mFileCount;
+        String[] mChildDirs = new String[0];
+
+        Node(long lastModified) {
+            mLastModified = lastModified;
+        }
+    }
+}
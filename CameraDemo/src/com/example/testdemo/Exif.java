@@ -18,6 +18,12 @@ package com.example.testdemo;
 
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
 public class Exif {
     private static final String TAG = "CameraExif";
 
@@ -118,6 +124,42 @@ public class Exif {
         return 0;
     }
 
+    // The overloads below only read the JPEG header up to the EXIF segment,
+    // so they do not need the whole picture in memory.
+    public static int getOrientation(File jpeg) {
+        try {
+            return getOrientation(ExifReader.read(jpeg));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + jpeg, e);
+            return 0;
+        }
+    }
+
+    public static int getOrientation(InputStream jpeg) throws IOException {
+        return getOrientation(ExifReader.read(jpeg));
+    }
+
+    public static int getOrientation(FileChannel jpeg) throws IOException {
+        return getOrientation(ExifReader.read(jpeg));
+    }
+
+    public static int getOrientation(ByteBuffer jpeg) {
+        return getOrientation(ExifReader.read(jpeg));
+    }
+
+    // Returns all the IFD0, Exif, GPS and IFD1 tags, parsed on first access.
+    public static ExifData getExifData(File jpeg) throws IOException {
+        return ExifReader.read(jpeg);
+    }
+
+    private static int getOrientation(ExifData exif) {
+        if (exif == null) {
+            Log.i(TAG, "Exif not found");
+            return 0;
+        }
+        return exif.getOrientation();
+    }
+
     private static int pack(byte[] bytes, int offset, int length,
             boolean littleEndian) {
         int step = 1;
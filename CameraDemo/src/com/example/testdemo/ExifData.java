@@ -0,0 +1,353 @@
+package com.example.testdemo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * exif中的tiff数据。IFD0、ExifIFD、GPS IFD与IFD1在第一次访问时才解析，
+ * 只读取方向时不会解析其他的IFD。
+ */
+public class ExifData {
+
+    public static final int IFD_0 = 0;
+    public static final int IFD_EXIF = 1;
+    public static final int IFD_GPS = 2;
+    public static final int IFD_1 = 3;
+    private static final int IFD_COUNT = 4;
+
+    public static final int TAG_IMAGE_WIDTH = 0x0100;
+    public static final int TAG_IMAGE_LENGTH = 0x0101;
+    public static final int TAG_MAKE = 0x010F;
+    public static final int TAG_MODEL = 0x0110;
+    public static final int TAG_ORIENTATION = 0x0112;
+    public static final int TAG_DATE_TIME = 0x0132;
+    public static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    public static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+    public static final int TAG_EXIF_IFD_POINTER = 0x8769;
+    public static final int TAG_GPS_IFD_POINTER = 0x8825;
+    public static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    public static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+    public static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+    public static final int TAG_GPS_LATITUDE_REF = 0x0001;
+    public static final int TAG_GPS_LATITUDE = 0x0002;
+    public static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+    public static final int TAG_GPS_LONGITUDE = 0x0004;
+
+    public static final int TYPE_BYTE = 1;
+    public static final int TYPE_ASCII = 2;
+    public static final int TYPE_SHORT = 3;
+    public static final int TYPE_LONG = 4;
+    public static final int TYPE_RATIONAL = 5;
+    public static final int TYPE_UNDEFINED = 7;
+    public static final int TYPE_SLONG = 9;
+    public static final int TYPE_SRATIONAL = 10;
+
+    private static final int TIFF_MAGIC = 0x002A;
+    private static final int ENTRY_SIZE = 12;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final ByteBuffer mTiff;
+    private final Map<Integer, Entry>[] mIfds;
+    private int mIfd1Offset;
+
+    /**
+     * 解析tiff头
+     * 
+     * @param tiff APP1段中"Exif\0\0"之后的数据，从position开始
+     * @return 不是有效的tiff数据时返回null
+     */
+    public static ExifData parse(ByteBuffer tiff) {
+        ByteBuffer buffer = tiff.slice();
+        if (buffer.remaining() < 8) {
+            return null;
+        }
+        int order = buffer.getShort(0);
+        if (order == 0x4949) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (order == 0x4D4D) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            return null;
+        }
+        if (buffer.getShort(2) != TIFF_MAGIC) {
+            return null;
+        }
+        return new ExifData(buffer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ExifData(ByteBuffer tiff) {
+        mTiff = tiff;
+        mIfds = new Map[IFD_COUNT];
+    }
+
+    /**
+     * 获取一个IFD中的所有条目
+     * 
+     * @param ifd IFD_0、IFD_EXIF、IFD_GPS或IFD_1
+     * @return key为tag
+     */
+    public synchronized Map<Integer, Entry> getEntries(int ifd) {
+        Map<Integer, Entry> entries = mIfds[ifd];
+        if (entries == null) {
+            switch (ifd) {
+                case IFD_0:
+                    entries = parseIfd(mTiff.getInt(4), true);
+                    break;
+                case IFD_EXIF:
+                    entries = parseIfd(getPointer(TAG_EXIF_IFD_POINTER), false);
+                    break;
+                case IFD_GPS:
+                    entries = parseIfd(getPointer(TAG_GPS_IFD_POINTER), false);
+                    break;
+                case IFD_1:
+                    getEntries(IFD_0);
+                    entries = parseIfd(mIfd1Offset, false);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown ifd " + ifd);
+            }
+            mIfds[ifd] = entries;
+        }
+        return entries;
+    }
+
+    /**
+     * @param ifd IFD_0、IFD_EXIF、IFD_GPS或IFD_1
+     * @param tag
+     * @return 没有这个tag时返回null
+     */
+    public Entry getEntry(int ifd, int tag) {
+        return getEntries(ifd).get(tag);
+    }
+
+    public int getInt(int ifd, int tag, int defaultValue) {
+        Entry entry = getEntry(ifd, tag);
+        return entry == null || entry.getCount() < 1 ? defaultValue : entry.getInt(0);
+    }
+
+    public String getString(int ifd, int tag) {
+        Entry entry = getEntry(ifd, tag);
+        return entry == null ? null : entry.getString();
+    }
+
+    /**
+     * 照片需要顺时针旋转的角度
+     * 
+     * @return 0、90、180或270
+     */
+    public int getOrientation() {
+        switch (getInt(IFD_0, TAG_ORIENTATION, 1)) {
+            case 3:
+                return 180;
+            case 6:
+                return 90;
+            case 8:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 读取gps经纬度
+     * 
+     * @return [纬度, 经度]，南纬与西经为负数，没有gps信息时返回null
+     */
+    public double[] getLatLong() {
+        Entry latitude = getEntry(IFD_GPS, TAG_GPS_LATITUDE);
+        Entry longitude = getEntry(IFD_GPS, TAG_GPS_LONGITUDE);
+        if (latitude == null || longitude == null || latitude.getCount() < 3
+                || longitude.getCount() < 3) {
+            return null;
+        }
+        double lat = toDegrees(latitude);
+        double lon = toDegrees(longitude);
+        if ("S".equals(getString(IFD_GPS, TAG_GPS_LATITUDE_REF))) {
+            lat = -lat;
+        }
+        if ("W".equals(getString(IFD_GPS, TAG_GPS_LONGITUDE_REF))) {
+            lon = -lon;
+        }
+        return new double[] {
+                lat, lon
+        };
+    }
+
+    /**
+     * tiff数据，position为0，字节序已经设置好
+     * 
+     * @return
+     */
+    public ByteBuffer getTiffBuffer() {
+        return mTiff.duplicate().order(mTiff.order());
+    }
+
+    private static double toDegrees(Entry entry) {
+        return entry.getRational(0) + entry.getRational(1) / 60 + entry.getRational(2) / 3600;
+    }
+
+    private int getPointer(int tag) {
+        return getInt(IFD_0, tag, 0);
+    }
+
+    private Map<Integer, Entry> parseIfd(int offset, boolean first) {
+        int limit = mTiff.limit();
+        if (offset < 8 || offset > limit - 2) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>();
+        int count = mTiff.getShort(offset) & 0xFFFF;
+        int position = offset + 2;
+        for (int i = 0; i < count && position <= limit - ENTRY_SIZE; i++) {
+            int tag = mTiff.getShort(position) & 0xFFFF;
+            int type = mTiff.getShort(position + 2) & 0xFFFF;
+            int components = mTiff.getInt(position + 4);
+            int unit = getUnitSize(type);
+            long size = (long) unit * components;
+            if (unit > 0 && components >= 0) {
+                int valueOffset = size <= 4 ? position + 8 : mTiff.getInt(position + 8);
+                // 数据超出范围的条目直接忽略
+                if (valueOffset >= 0 && valueOffset + size <= limit) {
+                    entries.put(tag, new Entry(mTiff, tag, type, components, valueOffset));
+                }
+            }
+            position += ENTRY_SIZE;
+        }
+        if (first) {
+            int next = offset + 2 + count * ENTRY_SIZE;
+            mIfd1Offset = next <= limit - 4 ? mTiff.getInt(next) : 0;
+        }
+        return Collections.unmodifiableMap(entries);
+    }
+
+    static int getUnitSize(int type) {
+        switch (type) {
+            case TYPE_BYTE:
+            case TYPE_ASCII:
+            case TYPE_UNDEFINED:
+                return 1;
+            case TYPE_SHORT:
+                return 2;
+            case TYPE_LONG:
+            case TYPE_SLONG:
+                return 4;
+            case TYPE_RATIONAL:
+            case TYPE_SRATIONAL:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * IFD中的一个条目，数值在读取时才从tiff数据中解析
+     */
+    public static class Entry {
+        private final ByteBuffer mTiff;
+        private final int mTag;
+        private final int mType;
+        private final int mCount;
+        private final int mValueOffset;
+
+        Entry(ByteBuffer tiff, int tag, int type, int count, int valueOffset) {
+            mTiff = tiff;
+            mTag = tag;
+            mType = type;
+            mCount = count;
+            mValueOffset = valueOffset;
+        }
+
+        public int getTag() {
+            return mTag;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * 读取整数值，有理数会被截断
+         * 
+         * @param index 第几个值
+         * @return
+         */
+        public int getInt(int index) {
+            checkIndex(index);
+            switch (mType) {
+                case TYPE_SHORT:
+                    return mTiff.getShort(mValueOffset + index * 2) & 0xFFFF;
+                case TYPE_LONG:
+                case TYPE_SLONG:
+                    return mTiff.getInt(mValueOffset + index * 4);
+                case TYPE_RATIONAL:
+                case TYPE_SRATIONAL:
+                    return (int) getRational(index);
+                default:
+                    return mTiff.get(mValueOffset + index) & 0xFF;
+            }
+        }
+
+        /**
+         * 读取有理数的值
+         * 
+         * @param index 第几个值
+         * @return 分母为0时返回0
+         */
+        public double getRational(int index) {
+            checkIndex(index);
+            if (mType != TYPE_RATIONAL && mType != TYPE_SRATIONAL) {
+                return getInt(index);
+            }
+            int position = mValueOffset + index * 8;
+            long numerator = mTiff.getInt(position);
+            long denominator = mTiff.getInt(position + 4);
+            if (mType == TYPE_RATIONAL) {
+                numerator &= 0xFFFFFFFFL;
+                denominator &= 0xFFFFFFFFL;
+            }
+            return denominator == 0 ? 0 : (double) numerator / denominator;
+        }
+
+        /**
+         * 读取字符串，去掉末尾的'\0'
+         * 
+         * @return
+         */
+        public String getString() {
+            byte[] bytes = getBytes();
+            int length = bytes.length;
+            while (length > 0 && bytes[length - 1] == 0) {
+                length--;
+            }
+            return new String(bytes, 0, length, ASCII);
+        }
+
+        /**
+         * 原始数据，多字节的值按tiff数据的字节序排列
+         * 
+         * @return
+         */
+        public byte[] getBytes() {
+            byte[] bytes = new byte[mCount * getUnitSize(mType)];
+            ByteBuffer buffer = mTiff.duplicate();
+            buffer.position(mValueOffset);
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= mCount) {
+                throw new IndexOutOfBoundsException("index " + index + " count " + mCount);
+            }
+        }
+    }
+}
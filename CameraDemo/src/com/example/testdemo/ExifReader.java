@@ -0,0 +1,306 @@
+package com.example.testdemo;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 从jpeg文件头读取exif信息。按段遍历jpeg的标记，遇到exif所在的APP1段就停止，
+ * 其余的段直接跳过，遇到SOS或EOI说明没有exif。
+ * 读取的数据只有段头与APP1段本身，APP1段最长65533字节，不需要把整张照片读入内存。
+ */
+public class ExifReader {
+
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_TEM = 0x01;
+    private static final int MARKER_RST0 = 0xD0;
+    private static final int MARKER_RST7 = 0xD7;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOF0 = 0xC0;
+    private static final int MARKER_SOF15 = 0xCF;
+    private static final int MARKER_DHT = 0xC4;
+    private static final int MARKER_JPG = 0xC8;
+    private static final int MARKER_DAC = 0xCC;
+    // "Exif"
+    private static final int EXIF_IDENTIFIER = 0x45786966;
+    // "Exif\0\0"
+    private static final int EXIF_HEADER_LENGTH = 6;
+
+    private ExifReader() {
+    }
+
+    /**
+     * 读取jpeg文件的exif信息
+     * 
+     * @param file jpeg文件
+     * @return 没有exif时返回null
+     * @throws IOException
+     */
+    public static ExifData read(File file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * 读取jpeg文件的exif信息与图片尺寸，需要继续读取到SOF段，仍然只读取段头
+     * 
+     * @param file jpeg文件
+     * @param size 不为null时写入图片的宽与高，没有找到SOF段时为0
+     * @return 没有exif时返回null
+     * @throws IOException
+     */
+    public static ExifData read(File file, int[] size) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return read(new ChannelSource(in.getChannel()), size);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 从流的当前位置开始读取exif信息，读完以后流停在exif段之后
+     * 
+     * @param in jpeg数据流
+     * @return 没有exif时返回null
+     * @throws IOException
+     */
+    public static ExifData read(InputStream in) throws IOException {
+        return read(new StreamSource(in), null);
+    }
+
+    /**
+     * 从channel的当前位置开始读取exif信息，不会改变channel的position
+     * 
+     * @param channel jpeg文件
+     * @return 没有exif时返回null
+     * @throws IOException
+     */
+    public static ExifData read(FileChannel channel) throws IOException {
+        return read(new ChannelSource(channel), null);
+    }
+
+    /**
+     * 从buffer的当前位置开始读取exif信息，不会改变buffer的position，exif数据不会被复制
+     * 
+     * @param jpeg jpeg数据
+     * @return 没有exif时返回null
+     */
+    public static ExifData read(ByteBuffer jpeg) {
+        try {
+            return read(new BufferSource(jpeg), null);
+        } catch (IOException e) {
+            // 内存中的数据只会因为长度不够而失败
+            return null;
+        }
+    }
+
+    private static ExifData read(Source source, int[] size) throws IOException {
+        byte[] header = new byte[EXIF_HEADER_LENGTH];
+        ExifData exif = null;
+        if (size != null) {
+            size[0] = 0;
+            size[1] = 0;
+        }
+        try {
+            source.readFully(header, 0, 2);
+            if ((header[0] & 0xFF) != MARKER_PREFIX || (header[1] & 0xFF) != MARKER_SOI) {
+                return null;
+            }
+            while (true) {
+                int marker = readMarker(source, header);
+                if (marker < 0) {
+                    return exif;
+                }
+                // 这几个标记后面没有长度
+                if (marker == MARKER_SOI || marker == MARKER_TEM
+                        || (marker >= MARKER_RST0 && marker <= MARKER_RST7)) {
+                    continue;
+                }
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    return exif;
+                }
+                source.readFully(header, 0, 2);
+                int length = (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) - 2;
+                if (length < 0) {
+                    return exif;
+                }
+                if (size != null && isStartOfFrame(marker) && length >= 5) {
+                    // 精度1字节，高2字节，宽2字节
+                    source.readFully(header, 0, 5);
+                    size[0] = ((header[3] & 0xFF) << 8) | (header[4] & 0xFF);
+                    size[1] = ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+                    return exif;
+                }
+                if (exif == null && marker == MARKER_APP1 && length > EXIF_HEADER_LENGTH) {
+                    source.readFully(header, 0, EXIF_HEADER_LENGTH);
+                    length -= EXIF_HEADER_LENGTH;
+                    if (isExifHeader(header)) {
+                        exif = ExifData.parse(source.readSegment(length));
+                        if (exif != null && size == null) {
+                            return exif;
+                        }
+                        continue;
+                    }
+                }
+                // 其他的APP段，例如xmp，直接跳过
+                source.skip(length);
+            }
+        } catch (EOFException e) {
+            // 文件不完整，返回已经读到的信息
+            return exif;
+        }
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= MARKER_SOF0 && marker <= MARKER_SOF15 && marker != MARKER_DHT
+                && marker != MARKER_JPG && marker != MARKER_DAC;
+    }
+
+    private static int readMarker(Source source, byte[] buffer) throws IOException {
+        source.readFully(buffer, 0, 1);
+        if ((buffer[0] & 0xFF) != MARKER_PREFIX) {
+            return -1;
+        }
+        // 标记前面可以有任意个0xFF填充
+        do {
+            source.readFully(buffer, 0, 1);
+        } while ((buffer[0] & 0xFF) == MARKER_PREFIX);
+        return buffer[0] & 0xFF;
+    }
+
+    private static boolean isExifHeader(byte[] header) {
+        int identifier = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16)
+                | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+        return identifier == EXIF_IDENTIFIER && header[4] == 0 && header[5] == 0;
+    }
+
+    private interface Source {
+        void readFully(byte[] buffer, int offset, int length) throws IOException;
+
+        void skip(int length) throws IOException;
+
+        ByteBuffer readSegment(int length) throws IOException;
+    }
+
+    private static class StreamSource implements Source {
+        private final InputStream mIn;
+
+        StreamSource(InputStream in) {
+            mIn = in;
+        }
+
+        @Override
+        public void readFully(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = mIn.read(buffer, offset, length);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void skip(int length) throws IOException {
+            while (length > 0) {
+                long count = mIn.skip(length);
+                if (count <= 0) {
+                    // 有些流的skip不会前进，读一个字节判断是否已经到了末尾
+                    if (mIn.read() < 0) {
+                        throw new EOFException();
+                    }
+                    count = 1;
+                }
+                length -= count;
+            }
+        }
+
+        @Override
+        public ByteBuffer readSegment(int length) throws IOException {
+            byte[] segment = new byte[length];
+            readFully(segment, 0, length);
+            return ByteBuffer.wrap(segment);
+        }
+    }
+
+    private static class ChannelSource implements Source {
+        private final FileChannel mChannel;
+        private long mPosition;
+
+        ChannelSource(FileChannel channel) throws IOException {
+            mChannel = channel;
+            mPosition = channel.position();
+        }
+
+        @Override
+        public void readFully(byte[] buffer, int offset, int length) throws IOException {
+            read(ByteBuffer.wrap(buffer, offset, length));
+        }
+
+        @Override
+        public void skip(int length) throws IOException {
+            mPosition += length;
+        }
+
+        @Override
+        public ByteBuffer readSegment(int length) throws IOException {
+            ByteBuffer segment = ByteBuffer.allocate(length);
+            read(segment);
+            segment.flip();
+            return segment;
+        }
+
+        private void read(ByteBuffer target) throws IOException {
+            while (target.hasRemaining()) {
+                int count = mChannel.read(target, mPosition);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                mPosition += count;
+            }
+        }
+    }
+
+    private static class BufferSource implements Source {
+        private final ByteBuffer mBuffer;
+
+        BufferSource(ByteBuffer buffer) {
+            mBuffer = buffer.duplicate();
+        }
+
+        @Override
+        public void readFully(byte[] buffer, int offset, int length) throws IOException {
+            if (mBuffer.remaining() < length) {
+                throw new EOFException();
+            }
+            mBuffer.get(buffer, offset, length);
+        }
+
+        @Override
+        public void skip(int length) throws IOException {
+            if (mBuffer.remaining() < length) {
+                throw new EOFException();
+            }
+            mBuffer.position(mBuffer.position() + length);
+        }
+
+        @Override
+        public ByteBuffer readSegment(int length) throws IOException {
+            if (mBuffer.remaining() < length) {
+                throw new EOFException();
+            }
+            ByteBuffer segment = mBuffer.slice();
+            segment.limit(length);
+            mBuffer.position(mBuffer.position() + length);
+            return segment;
+        }
+    }
+}
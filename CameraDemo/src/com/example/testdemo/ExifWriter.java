@@ -0,0 +1,386 @@
+package com.example.testdemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 生成exif所在的APP1段。可以从照片原有的exif开始，修改或者增加条目以后重新生成，
+ * 配合 {@link JpegExifSplicer} 在照片写入文件之前替换其中的exif，不需要写完文件以后再改写一遍。
+ * 原有exif中的InteroperabilityIFD与非jpeg格式的缩略图不会保留。
+ * 不是线程安全的。
+ */
+public class ExifWriter {
+
+    private static final int TAG_INTEROPERABILITY_IFD_POINTER = 0xA005;
+    private static final int TAG_SUB_IFDS = 0x014A;
+    private static final int TIFF_MAGIC = 0x002A;
+    private static final int ENTRY_SIZE = 12;
+    // APP1段的长度字段最大为65535，包括长度字段本身
+    private static final int MAX_APP1_LENGTH = 0xFFFF - 2;
+    private static final byte[] EXIF_HEADER = {
+            'E', 'x', 'i', 'f', 0, 0
+    };
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final ByteOrder mOrder;
+    @SuppressWarnings("unchecked")
+    private final Map<Integer, Value>[] mIfds = new Map[] {
+            new TreeMap<Integer, Value>(), new TreeMap<Integer, Value>(),
+            new TreeMap<Integer, Value>(), new TreeMap<Integer, Value>()
+    };
+    private byte[] mThumbnail;
+
+    /**
+     * 没有任何条目的exif，字节序为big endian
+     */
+    public ExifWriter() {
+        mOrder = ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * 复制原有的exif，字节序与原来相同
+     * 
+     * @param exif 原有的exif，为null时与 {@link #ExifWriter()} 相同
+     */
+    public ExifWriter(ExifData exif) {
+        if (exif == null) {
+            mOrder = ByteOrder.BIG_ENDIAN;
+            return;
+        }
+        mOrder = exif.getTiffBuffer().order();
+        copy(exif, ExifData.IFD_0);
+        copy(exif, ExifData.IFD_EXIF);
+        copy(exif, ExifData.IFD_GPS);
+        // 数量为0的entry与没有这个tag一样处理
+        int start = exif.getInt(ExifData.IFD_1, ExifData.TAG_JPEG_INTERCHANGE_FORMAT, 0);
+        int size = exif.getInt(ExifData.IFD_1, ExifData.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH, 0);
+        if (start > 0 && size > 0) {
+            ByteBuffer tiff = exif.getTiffBuffer();
+            if (start <= tiff.limit() - size) {
+                mThumbnail = new byte[size];
+                tiff.position(start);
+                tiff.get(mThumbnail);
+                copy(exif, ExifData.IFD_1);
+            }
+        }
+    }
+
+    /**
+     * 多字节的值按这个字节序写入
+     * 
+     * @return
+     */
+    public ByteOrder getOrder() {
+        return mOrder;
+    }
+
+    /**
+     * 设置字符串条目，末尾会自动加上'\0'
+     * 
+     * @param ifd ExifData.IFD_0、IFD_EXIF、IFD_GPS或IFD_1
+     * @param tag
+     * @param value
+     */
+    public void setAscii(int ifd, int tag, String value) {
+        byte[] bytes = value.getBytes(ASCII);
+        byte[] data = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, data, 0, bytes.length);
+        put(ifd, tag, ExifData.TYPE_ASCII, data.length, data);
+    }
+
+    /**
+     * 设置SHORT类型的条目
+     * 
+     * @param ifd ExifData.IFD_0、IFD_EXIF、IFD_GPS或IFD_1
+     * @param tag
+     * @param values 0到65535
+     */
+    public void setShort(int ifd, int tag, int... values) {
+        ByteBuffer buffer = allocate(values.length * 2);
+        for (int value : values) {
+            buffer.putShort((short) value);
+        }
+        put(ifd, tag, ExifData.TYPE_SHORT, values.length, buffer.array());
+    }
+
+    /**
+     * 设置LONG类型的条目
+     * 
+     * @param ifd ExifData.IFD_0、IFD_EXIF、IFD_GPS或IFD_1
+     * @param tag
+     * @param values 按无符号数写入
+     */
+    public void setLong(int ifd, int tag, int... values) {
+        ByteBuffer buffer = allocate(values.length * 4);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        put(ifd, tag, ExifData.TYPE_LONG, values.length, buffer.array());
+    }
+
+    /**
+     * 设置RATIONAL类型的条目，每个值由分子与分母组成
+     * 
+     * @param ifd ExifData.IFD_0、IFD_EXIF、IFD_GPS或IFD_1
+     * @param tag
+     * @param numerators 分子，0到0xFFFFFFFF
+     * @param denominators 分母，0到0xFFFFFFFF，长度与分子相同
+     */
+    public void setRational(int ifd, int tag, long[] numerators, long[] denominators) {
+        if (numerators.length != denominators.length) {
+            throw new IllegalArgumentException("numerators and denominators differ in length");
+        }
+        ByteBuffer buffer = allocate(numerators.length * 8);
+        for (int i = 0; i < numerators.length; i++) {
+            buffer.putInt((int) numerators[i]);
+            buffer.putInt((int) denominators[i]);
+        }
+        put(ifd, tag, ExifData.TYPE_RATIONAL, numerators.length, buffer.array());
+    }
+
+    /**
+     * 设置任意类型的条目，多字节的值需要按 {@link #getOrder()} 排列
+     * 
+     * @param ifd ExifData.IFD_0、IFD_EXIF、IFD_GPS或IFD_1
+     * @param tag
+     * @param type ExifData中的TYPE_常量
+     * @param data 原始数据
+     */
+    public void setBytes(int ifd, int tag, int type, byte[] data) {
+        int unit = ExifData.getUnitSize(type);
+        if (unit == 0 || data.length % unit != 0) {
+            throw new IllegalArgumentException("Invalid data for type " + type);
+        }
+        put(ifd, tag, type, data.length / unit, data.clone());
+    }
+
+    /**
+     * 删除一个条目
+     * 
+     * @param ifd ExifData.IFD_0、IFD_EXIF、IFD_GPS或IFD_1
+     * @param tag
+     */
+    public void remove(int ifd, int tag) {
+        mIfds[ifd].remove(tag);
+    }
+
+    public boolean contains(int ifd, int tag) {
+        return mIfds[ifd].containsKey(tag);
+    }
+
+    /**
+     * 设置照片需要顺时针旋转的角度
+     * 
+     * @param degrees 0、90、180或270
+     */
+    public void setOrientation(int degrees) {
+        int value;
+        switch ((degrees % 360 + 360) % 360) {
+            case 90:
+                value = 6;
+                break;
+            case 180:
+                value = 3;
+                break;
+            case 270:
+                value = 8;
+                break;
+            default:
+                value = 1;
+                break;
+        }
+        setShort(ExifData.IFD_0, ExifData.TAG_ORIENTATION, value);
+    }
+
+    /**
+     * 设置jpeg格式的缩略图，为null时删除缩略图与IFD1
+     * 
+     * @param thumbnail
+     */
+    public void setThumbnail(byte[] thumbnail) {
+        mThumbnail = thumbnail;
+        if (thumbnail == null) {
+            mIfds[ExifData.IFD_1].clear();
+        }
+    }
+
+    public byte[] getThumbnail() {
+        return mThumbnail;
+    }
+
+    /**
+     * 生成完整的APP1段，包括0xFFE1标记与长度。超过APP1段的长度上限时去掉缩略图
+     * 
+     * @return
+     * @throws IOException 去掉缩略图以后仍然超过长度上限
+     */
+    public byte[] toApp1() throws IOException {
+        byte[] tiff = toTiff(true);
+        if (EXIF_HEADER.length + tiff.length > MAX_APP1_LENGTH && mThumbnail != null) {
+            tiff = toTiff(false);
+        }
+        int length = EXIF_HEADER.length + tiff.length;
+        if (length > MAX_APP1_LENGTH) {
+            throw new IOException("Exif data too large: " + length);
+        }
+        byte[] app1 = new byte[4 + length];
+        app1[0] = (byte) 0xFF;
+        app1[1] = (byte) 0xE1;
+        app1[2] = (byte) ((length + 2) >> 8);
+        app1[3] = (byte) (length + 2);
+        System.arraycopy(EXIF_HEADER, 0, app1, 4, EXIF_HEADER.length);
+        System.arraycopy(tiff, 0, app1, 4 + EXIF_HEADER.length, tiff.length);
+        return app1;
+    }
+
+    /**
+     * 依次写入IFD0、ExifIFD、GPS IFD、IFD1与缩略图，每个IFD的数据紧跟在IFD之后
+     */
+    private byte[] toTiff(boolean withThumbnail) {
+        Map<Integer, Value> ifd0 = new TreeMap<Integer, Value>(mIfds[ExifData.IFD_0]);
+        Map<Integer, Value> exif = mIfds[ExifData.IFD_EXIF];
+        Map<Integer, Value> gps = mIfds[ExifData.IFD_GPS];
+        Map<Integer, Value> ifd1 = null;
+        byte[] thumbnail = withThumbnail ? mThumbnail : null;
+        // 指针的值在计算出偏移以后再填写，这里先占位
+        if (!exif.isEmpty()) {
+            ifd0.put(ExifData.TAG_EXIF_IFD_POINTER, pointer());
+        }
+        if (!gps.isEmpty()) {
+            ifd0.put(ExifData.TAG_GPS_IFD_POINTER, pointer());
+        }
+        if (thumbnail != null) {
+            ifd1 = new TreeMap<Integer, Value>(mIfds[ExifData.IFD_1]);
+            ifd1.put(ExifData.TAG_JPEG_INTERCHANGE_FORMAT, pointer());
+            ifd1.put(ExifData.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH, pointer());
+        }
+
+        int ifd0Offset = 8;
+        int exifOffset = ifd0Offset + ifdSize(ifd0);
+        int gpsOffset = exifOffset + (exif.isEmpty() ? 0 : ifdSize(exif));
+        int ifd1Offset = gpsOffset + (gps.isEmpty() ? 0 : ifdSize(gps));
+        int thumbnailOffset = ifd1Offset + (ifd1 == null ? 0 : ifdSize(ifd1));
+        int total = thumbnailOffset + (thumbnail == null ? 0 : thumbnail.length);
+
+        if (!exif.isEmpty()) {
+            setPointer(ifd0.get(ExifData.TAG_EXIF_IFD_POINTER), exifOffset);
+        }
+        if (!gps.isEmpty()) {
+            setPointer(ifd0.get(ExifData.TAG_GPS_IFD_POINTER), gpsOffset);
+        }
+        if (ifd1 != null) {
+            setPointer(ifd1.get(ExifData.TAG_JPEG_INTERCHANGE_FORMAT), thumbnailOffset);
+            setPointer(ifd1.get(ExifData.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH), thumbnail.length);
+        }
+
+        ByteBuffer buffer = allocate(total);
+        buffer.putShort((short) (mOrder == ByteOrder.LITTLE_ENDIAN ? 0x4949 : 0x4D4D));
+        buffer.putShort((short) TIFF_MAGIC);
+        buffer.putInt(ifd0Offset);
+        writeIfd(buffer, ifd0, ifd1 == null ? 0 : ifd1Offset);
+        if (!exif.isEmpty()) {
+            writeIfd(buffer, exif, 0);
+        }
+        if (!gps.isEmpty()) {
+            writeIfd(buffer, gps, 0);
+        }
+        if (ifd1 != null) {
+            writeIfd(buffer, ifd1, 0);
+            buffer.put(thumbnail);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * IFD本身与超过4字节的数据的总长度，数据按2字节对齐
+     */
+    private static int ifdSize(Map<Integer, Value> ifd) {
+        int size = 2 + ifd.size() * ENTRY_SIZE + 4;
+        for (Value value : ifd.values()) {
+            if (value.mData.length > 4) {
+                size += value.mData.length + (value.mData.length & 1);
+            }
+        }
+        return size;
+    }
+
+    private static void writeIfd(ByteBuffer buffer, Map<Integer, Value> ifd, int next) {
+        int start = buffer.position();
+        int dataOffset = start + 2 + ifd.size() * ENTRY_SIZE + 4;
+        buffer.putShort((short) ifd.size());
+        for (Map.Entry<Integer, Value> entry : ifd.entrySet()) {
+            Value value = entry.getValue();
+            buffer.putShort(entry.getKey().shortValue());
+            buffer.putShort((short) value.mType);
+            buffer.putInt(value.mCount);
+            if (value.mData.length <= 4) {
+                // 不足4字节的值靠前放置
+                buffer.put(value.mData);
+                for (int i = value.mData.length; i < 4; i++) {
+                    buffer.put((byte) 0);
+                }
+            } else {
+                buffer.putInt(dataOffset);
+                dataOffset += value.mData.length + (value.mData.length & 1);
+            }
+        }
+        buffer.putInt(next);
+        for (Value value : ifd.values()) {
+            if (value.mData.length > 4) {
+                buffer.put(value.mData);
+                if ((value.mData.length & 1) != 0) {
+                    buffer.put((byte) 0);
+                }
+            }
+        }
+    }
+
+    private void copy(ExifData exif, int ifd) {
+        for (ExifData.Entry entry : exif.getEntries(ifd).values()) {
+            int tag = entry.getTag();
+            // 指向其他数据的偏移在重新生成以后失效，需要的指针在生成时重新计算
+            if (tag == ExifData.TAG_EXIF_IFD_POINTER || tag == ExifData.TAG_GPS_IFD_POINTER
+                    || tag == TAG_INTEROPERABILITY_IFD_POINTER || tag == TAG_SUB_IFDS
+                    || tag == ExifData.TAG_JPEG_INTERCHANGE_FORMAT
+                    || tag == ExifData.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
+                continue;
+            }
+            put(ifd, tag, entry.getType(), entry.getCount(), entry.getBytes());
+        }
+    }
+
+    private void put(int ifd, int tag, int type, int count, byte[] data) {
+        if (tag == ExifData.TAG_EXIF_IFD_POINTER || tag == ExifData.TAG_GPS_IFD_POINTER) {
+            throw new IllegalArgumentException("Pointer tags are written automatically");
+        }
+        mIfds[ifd].put(tag, new Value(type, count, data));
+    }
+
+    private Value pointer() {
+        return new Value(ExifData.TYPE_LONG, 1, new byte[4]);
+    }
+
+    private void setPointer(Value value, int offset) {
+        ByteBuffer.wrap(value.mData).order(mOrder).putInt(offset);
+    }
+
+    private ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(mOrder);
+    }
+
+    private static class Value {
+        final int mType;
+        final int mCount;
+        final byte[] mData;
+
+        Value(int type, int count, byte[] data) {
+            mType = type;
+            mCount = count;
+            mData = data;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.testdemo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件与目录复制。文件内容使用FileChannel.transferTo复制，由内核直接在两个文件之间传输，
+ * 不经过java中的缓存；目录中的文件在多个线程中同时复制。
+ * 文件先写入 .part 文件，写完以后才重命名成目标文件，并保留原文件的修改时间与可执行属性，
+ * 中断以后再次复制时跳过已经完成的文件，.part 文件从中断的位置继续写。
+ * 需要在后台线程中调用。
+ */
+public class FileCopier {
+
+    /**
+     * 复制进度回调，在复制线程中执行
+     */
+    public interface ProgressListener {
+        /**
+         * 每复制一段数据或者完成一个文件回调一次，跳过的文件也会回调
+         * 
+         * @param bytesDone 已经完成的字节数
+         * @param bytesTotal 需要复制的全部字节数
+         * @param filesDone 已经完成的文件数
+         * @param filesTotal 需要复制的文件数
+         */
+        void onProgress(long bytesDone, long bytesTotal, int filesDone, int filesTotal);
+    }
+
+    public static final String PART_SUFFIX = ".part";
+    // 每次transferTo的最大长度，复制大文件时在两段之间检查取消并回调进度
+    private static final long CHUNK_SIZE = 8 * 1024 * 1024;
+    // 部分文件系统的修改时间精度为2秒
+    private static final long TIME_TOLERANCE = 2000;
+
+    private final int mThreadCount;
+    private ProgressListener mListener;
+    private volatile boolean mCancelled;
+
+    public FileCopier() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount 同时复制的线程数
+     */
+    public FileCopier(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mThreadCount = threadCount;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 取消正在进行的复制，copy会抛出InterruptedIOException，已经写入的部分可以在下次复制时继续
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * 复制文件或者目录
+     * 
+     * @param source 文件或者目录
+     * @param target 复制以后的路径，source是目录时target为对应的目录，已经存在时合并到其中
+     * @return 实际复制的文件数，不包括已经完成而跳过的文件
+     * @throws IOException
+     */
+    public int copy(File source, File target) throws IOException {
+        mCancelled = false;
+        if (!source.exists()) {
+            throw new IOException(source + " does not exist");
+        }
+        final List<File> sources = new ArrayList<File>();
+        final List<File> targets = new ArrayList<File>();
+        List<File> dirs = new ArrayList<File>();
+        long total = 0;
+        if (source.isDirectory()) {
+            String sourcePath = source.getCanonicalPath() + File.separator;
+            if ((target.getCanonicalPath() + File.separator).startsWith(sourcePath)) {
+                throw new IOException("Can not copy " + source + " into itself");
+            }
+            dirs.add(source);
+            // 先列出全部文件再创建目录，避免遍历到正在写入的目录
+            int prefix = source.getPath().length() + 1;
+            FileWalker walker = new FileWalker(source);
+            walker.setIncludeDirectories(true);
+            for (File file : walker) {
+                if (file.isDirectory()) {
+                    dirs.add(file);
+                } else {
+                    sources.add(file);
+                    targets.add(new File(target, file.getPath().substring(prefix)));
+                    total += file.length();
+                }
+            }
+            for (File dir : dirs) {
+                mkdirs(dir == source ? target
+                        : new File(target, dir.getPath().substring(prefix)));
+            }
+        } else {
+            sources.add(source);
+            targets.add(target);
+            total = source.length();
+            mkdirs(target.getParentFile());
+        }
+
+        final int filesTotal = sources.size();
+        final long bytesTotal = total;
+        final AtomicInteger filesDone = new AtomicInteger();
+        final AtomicLong bytesDone = new AtomicLong();
+        final AtomicInteger copied = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(filesTotal);
+            for (int i = 0; i < filesTotal; i++) {
+                final File from = sources.get(i);
+                final File to = targets.get(i);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        if (mCancelled) {
+                            throw new InterruptedIOException("Copy cancelled");
+                        }
+                        if (copyFile(from, to, bytesDone, bytesTotal, filesDone, filesTotal)) {
+                            copied.incrementAndGet();
+                        } else {
+                            bytesDone.addAndGet(from.length());
+                        }
+                        int files = filesDone.incrementAndGet();
+                        ProgressListener listener = mListener;
+                        if (listener != null) {
+                            listener.onProgress(bytesDone.get(), bytesTotal, files, filesTotal);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 写入文件会改变目录的修改时间，全部完成以后从最深的目录开始设置
+        if (source.isDirectory()) {
+            int prefix = source.getPath().length() + 1;
+            for (int i = dirs.size() - 1; i >= 0; i--) {
+                File dir = dirs.get(i);
+                File to = dir == source ? target
+                        : new File(target, dir.getPath().substring(prefix));
+                to.setLastModified(dir.lastModified());
+            }
+        }
+        return copied.get();
+    }
+
+    /**
+     * @return true实际复制了数据，false已经完成而跳过
+     */
+    private boolean copyFile(File source, File target, AtomicLong bytesDone, long bytesTotal,
+            AtomicInteger filesDone, int filesTotal) throws IOException {
+        long size = source.length();
+        long time = source.lastModified();
+        if (target.isFile() && target.length() == size
+                && Math.abs(target.lastModified() - time) < TIME_TOLERANCE) {
+            return false;
+        }
+
+        File part = new File(target.getPath() + PART_SUFFIX);
+        long offset = 0;
+        // 原文件在中断以后被修改过时重新复制
+        if (part.isFile() && part.length() <= size && part.lastModified() >= time) {
+            offset = part.length();
+        }
+        bytesDone.addAndGet(offset);
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out;
+        try {
+            out = new FileOutputStream(part, offset > 0);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        try {
+            FileChannel src = in.getChannel();
+            FileChannel dst = out.getChannel();
+            long position = offset;
+            while (position < size) {
+                if (mCancelled) {
+                    throw new InterruptedIOException("Copy cancelled");
+                }
+                long count = src.transferTo(position, Math.min(CHUNK_SIZE, size - position), dst);
+                if (count <= 0) {
+                    throw new IOException("Unexpected end of " + source);
+                }
+                position += count;
+                long bytes = bytesDone.addAndGet(count);
+                ProgressListener listener = mListener;
+                if (listener != null && position < size) {
+                    listener.onProgress(bytes, bytesTotal, filesDone.get(), filesTotal);
+                }
+            }
+        } finally {
+            try {
+                in.close();
+            } finally {
+                out.close();
+            }
+        }
+        if (part.length() != size) {
+            part.delete();
+            throw new IOException("Size mismatch for " + source);
+        }
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Can not replace " + target);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("Can not rename " + part + " to " + target);
+        }
+        target.setLastModified(time);
+        if (source.canExecute()) {
+            target.setExecutable(true);
+        }
+        return true;
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Copy interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to copy file", cause);
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Can not create directory " + dir);
+        }
+    }
+}
@@ -7,19 +7,14 @@ import android.os.Environment;
 import android.os.StatFs;
 import android.util.Log;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Stack;
@@ -262,19 +257,25 @@ public class FileUtils {
         File file = new File(path);
         ArrayList<File> dataList = new ArrayList<File>();
         if (file.exists() && file.canRead()) {
-            if (file.isFile()) {
-                dataList.add(file);
-            } else if (file.isDirectory()) {
-                String[] list = file.list();
-                for (int i = 0; i < list.length; i++) {
-                    dataList.addAll(getFileList(path + Constances.SLASH
-                            + list[i]));
-                }
+            for (File item : new FileWalker(file)) {
+                dataList.add(item);
             }
         }
         return dataList;
     }
 
+    /**
+     * 按需遍历给定路径下的所有文件，文件很多时使用这个方法代替 {@link #getFileList(String)}
+     * 
+     * @param path 路径
+     * @param typeString 文件的后缀，与FileTypeFiter相同，为null时返回所有文件
+     * @return
+     */
+    public static FileWalker getFileWalker(String path, String typeString) {
+        return new FileWalker(new File(path), typeString == null ? null
+                : new FileTypeFiter(typeString));
+    }
+
     /**
      * 返回上一个文件路径的所有文件夹
      * 
@@ -451,13 +452,16 @@ public class FileUtils {
     /**
      * list 比较对象
      */
-    private static final Comparator alph = new Comparator<String>() {
+    private static final Comparator<String> alph = new Comparator<String>() {
         @Override
         public int compare(String arg0, String arg1) {
             return arg0.toLowerCase().compareTo(arg1.toLowerCase());
         }
     };
 
+    // 所有实例共享的子目录列表缓存，前进后退时不需要重新列出与排序
+    private static final DirectoryListingCache sListingCache = new DirectoryListingCache(alph);
+
     /**
      * 这个文件名字是否是一个文件夹
      * 
@@ -494,38 +498,18 @@ public class FileUtils {
      * 
      * @return
      */
-    @SuppressWarnings("unchecked")
     private ArrayList<String> populate_list() {
 
         if (!mDirContent.isEmpty())
             mDirContent.clear();
 
-        File file = new File(mPathStack.peek());
-
-        if (file.exists() && file.canRead()) {
-            String[] list = file.list();
-            ArrayList<String> dirList = new ArrayList<String>();
-            for (int i = 0; i < list.length; i++) {
-                if (isDirectory(list[i])) {
-                    dirList.add(list[i]);
-                }
-            }
-            int len = dirList.size();
-
-            for (int i = 0; i < len; i++) {
-                if (dirList.get(i).toString().charAt(0) != '.')
-                    mDirContent.add(dirList.get(i));
-            }
-
-            Object[] tt = mDirContent.toArray();
-            mDirContent.clear();
-
-            Arrays.sort(tt, alph);
-
-            for (Object a : tt) {
-                mDirContent.add((String) a);
+        // 缓存中的列表已经排好序，只需要去掉隐藏目录
+        List<String> dirList = sListingCache.getDirectories(new File(mPathStack.peek()));
+        if (dirList != null) {
+            for (String name : dirList) {
+                if (name.charAt(0) != '.')
+                    mDirContent.add(name);
             }
-
         }
 
         return mDirContent;
@@ -582,16 +566,15 @@ public class FileUtils {
      * 
      * @param old 文件的路径地址或者文件夹地址
      * @param newDir 将要复制到的文件夹的地址
+     * @param fileName 复制以后的文件名，为空时使用原来的名字，复制文件夹时不使用
      * @return 返回值0则成功，-1则失败
      */
     public static int copyToDirectory(String old, String newDir, String fileName) {
         File old_file = new File(old);
         File temp_dir = new File(newDir);
-        byte[] data = new byte[BUFFER];
-        int read = 0;
+        File cp_file = null;
 
         if (old_file.isFile() && temp_dir.isDirectory() && temp_dir.canWrite()) {
-            File cp_file = null;
             if (fileName == null || fileName.equals(Constances.BLANK)) {
                 String file_name = old.substring(
                         old.lastIndexOf(Constances.SLASH), old.length());
@@ -599,65 +582,21 @@ public class FileUtils {
             } else {
                 cp_file = new File(newDir + Constances.SLASH + fileName);
             }
-
-            BufferedOutputStream o_stream = null;
-            BufferedInputStream i_stream = null;
-            try {
-                o_stream = new BufferedOutputStream(new FileOutputStream(
-                        cp_file));
-                i_stream = new BufferedInputStream(
-                        new FileInputStream(old_file));
-
-                while ((read = i_stream.read(data, 0, BUFFER)) != -1)
-                    o_stream.write(data, 0, read);
-
-                o_stream.flush();
-                i_stream.close();
-                o_stream.close();
-
-            } catch (FileNotFoundException e) {
-                Log.e(TAG, e.getMessage());
-                return -1;
-
-            } catch (IOException e) {
-                Log.e(TAG, e.getMessage());
-                return -1;
-            } finally {
-                if (i_stream != null) {
-                    try {
-                        i_stream.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, e.getMessage());
-                    }
-                }
-                if (o_stream != null) {
-                    try {
-                        o_stream.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, e.getMessage());
-                    }
-                }
-
-            }
-
         } else if (old_file.isDirectory() && temp_dir.isDirectory()
                 && temp_dir.canWrite()) {
-            String files[] = old_file.list();
-            String dir = newDir
-                    + old.substring(old.lastIndexOf("/"), old.length());
-            int len = files.length;
-
-            if (!new File(dir).mkdir())
-                return -1;
-
-            for (int i = 0; i < len; i++)
-                copyToDirectory(old + "/" + files[i], dir, null);
-
-        } else if (!temp_dir.canWrite()) {
-            return -1;
+            cp_file = new File(newDir
+                    + old.substring(old.lastIndexOf("/"), old.length()));
         } else {
             return -1;
         }
+
+        // 目标已经存在时继续上次没有完成的复制，已经复制好的文件会被跳过
+        try {
+            new FileCopier().copy(old_file, cp_file);
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+            return -1;
+        }
         return 0;
     }
 
@@ -667,6 +606,16 @@ public class FileUtils {
      * @return
      */
     public static String getBiggestStorage() {
+        try {
+            StorageVolumeRegistry.Volume volume = StorageVolumeRegistry.getDefault()
+                    .getBiggestStorageVolume();
+            if (volume != null) {
+                return volume.getPath().getPath();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Can not read mount info", e);
+        }
+        // 读不到挂载信息时比较外部存储所在目录中的各个目录
         String storageString = Environment.getExternalStorageDirectory()
                 .getParent();
         File storageFile = new File(storageString);
@@ -801,6 +750,19 @@ public class FileUtils {
         FileUtils.backupDir = backupDir;
     }
 
+    /**
+     * 把照片目录增量备份到备份目录，只写入新增或者变化的文件，需要在后台线程中调用
+     * 
+     * @return 这次新建的备份卷
+     * @throws IOException
+     */
+    public static List<File> backupPhotoDir() throws IOException {
+        if (photoDir == null || backupDir == null) {
+            throw new IOException("Photo or backup directory not set");
+        }
+        return new IncrementalBackup(new File(photoDir), new File(backupDir)).run();
+    }
+
     public static void setMapzoneDir(String mapzoneDir) {
         FileUtils.mapzoneDir = mapzoneDir;
     }
@@ -836,13 +798,13 @@ public class FileUtils {
      */
     public static ArrayList<File> getCurrentDirList(String filePath) {
         ArrayList<File> file_list = new ArrayList<File>();
-        File[] files = (new File(filePath)).listFiles();
-        for (File _file : files)
+        FileWalker walker = new FileWalker(new File(filePath));
+        walker.setMaxDepth(1);
+        walker.setIncludeFiles(false);
+        walker.setIncludeDirectories(true);
+        for (File _file : walker)
         {
-            if (_file.isDirectory() && _file.getName() != "." && _file.getName() != "..")
-            {
-                file_list.add(_file);
-            }
+            file_list.add(_file);
         }
         return file_list;
     }
@@ -876,43 +838,21 @@ public class FileUtils {
         return totalBlocks * blockSize;
     }
 
+    /**
+     * 所有已经挂载的sd卡与内置存储的根目录，见 {@link StorageVolumeRegistry}
+     * 
+     * @return 读取挂载信息失败时返回null
+     */
     public static List<File> getALLMemoryFile() {
         try {
             List<File> list = new ArrayList<File>();
-            Runtime runtime = Runtime.getRuntime();
-            Process proc = runtime.exec("mount");
-            InputStream is = proc.getInputStream();
-            InputStreamReader isr = new InputStreamReader(is);
-            String line;
-            String mount = new String();
-            BufferedReader br = new BufferedReader(isr);
-            while ((line = br.readLine()) != null) {
-                Log.i("testlog", line);
-                if (line.contains("secure"))
-                    continue;
-                if (line.contains("asec"))
-                    continue;
-                if (line.contains("fat")) {
-                    String columns[] = line.split(" ");
-                    if (columns != null && columns.length > 1) {
-                        mount = mount.concat(columns[1] + "*");
-                    }
-                }
-                else if (line.contains("fuse")) {
-                    String columns[] = line.split(" ");
-                    if (columns != null && columns.length > 1) {
-                        mount = mount.concat(columns[1] + "*");
-                    }
-                }
-            }
-            String[] paths = mount.split("\\*");
-            for (String s : paths) {
-                File f = new File(s);
-                list.add(f);
+            for (StorageVolumeRegistry.Volume volume : StorageVolumeRegistry.getDefault()
+                    .getStorageVolumes()) {
+                list.add(volume.getPath());
             }
             return list;
-        } catch (Exception e) {
-            Log.e("test", "e.toString()=" + e.toString());
+        } catch (IOException e) {
+            Log.e(TAG, "e.toString()=" + e.toString());
             return null;
         }
     }
@@ -926,30 +866,17 @@ public class FileUtils {
         return getFileSize(new File(path));
     }
 
+    /**
+     * 文件或者目录的总大小，每次都重新读取所有文件的大小，见 {@link DirectoryStats}
+     * 
+     * @param f 文件或者目录
+     * @return f为null时返回-1
+     */
     public static long getFileSize(File f) {
         if (f == null) {
             return -1;
         }
-        long size = 0;
-        if (f.isDirectory()) {
-            File[] dirFileList = f.listFiles();
-            for (File item : dirFileList)
-                size = size + getFileSize(item);
-        } else {
-            if (f.exists()) {
-                FileInputStream fis = null;
-                try {
-                    fis = new FileInputStream(f);
-                    size = fis.available();
-                    fis.close();
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        return size;
+        return DirectoryStats.getDefault().get(f).getSize();
     }
 
     public static String FormetFileSize(long fileS) {// 转换文件大小
@@ -0,0 +1,204 @@
+package com.example.testdemo;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 按需遍历目录树，每次只返回一个文件，不会先把整棵树的文件都放进列表。
+ * 遍历顺序与 FileUtils.getFileList 相同，为深度优先，目录中的顺序为File.list()的顺序。
+ * 内存中只保存当前路径上每一层目录的文件名列表，与整棵树的大小无关。
+ * 可以分页读取供界面列表使用，也可以在其他线程中取消。
+ * 只能遍历一次，不是线程安全的，cancel除外。
+ */
+public class FileWalker implements Iterator<File>, Iterable<File> {
+
+    private final File mRoot;
+    private final FilenameFilter mFileFilter;
+    private final ArrayDeque<Frame> mStack = new ArrayDeque<Frame>();
+    private boolean mIncludeFiles = true;
+    private boolean mIncludeDirectories;
+    private int mMaxDepth = Integer.MAX_VALUE;
+    private boolean mStarted;
+    private File mNext;
+    private int mCount;
+    private volatile boolean mCancelled;
+
+    /**
+     * @param root 根目录，也可以是单个文件
+     */
+    public FileWalker(File root) {
+        this(root, null);
+    }
+
+    /**
+     * @param root 根目录，也可以是单个文件
+     * @param fileFilter 文件过滤，只作用于文件，不影响进入子目录，例如 {@link FileUtils.FileTypeFiter}
+     */
+    public FileWalker(File root, FilenameFilter fileFilter) {
+        mRoot = root;
+        mFileFilter = fileFilter;
+    }
+
+    /**
+     * 是否返回文件，默认为true
+     * 
+     * @param includeFiles
+     */
+    public void setIncludeFiles(boolean includeFiles) {
+        checkNotStarted();
+        mIncludeFiles = includeFiles;
+    }
+
+    /**
+     * 是否返回目录，默认为false，目录在其中的内容之前返回
+     * 
+     * @param includeDirectories
+     */
+    public void setIncludeDirectories(boolean includeDirectories) {
+        checkNotStarted();
+        mIncludeDirectories = includeDirectories;
+    }
+
+    /**
+     * 最大遍历深度，1表示只遍历根目录的直接子项，默认不限制
+     * 
+     * @param maxDepth
+     */
+    public void setMaxDepth(int maxDepth) {
+        checkNotStarted();
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be positive");
+        }
+        mMaxDepth = maxDepth;
+    }
+
+    /**
+     * 取消遍历，可以在其他线程中调用，之后hasNext返回false
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @return 已经返回的文件数量，也就是下一页的起始位置
+     */
+    public int getPosition() {
+        return mCount;
+    }
+
+    /**
+     * 读取下一页
+     * 
+     * @param pageSize 每页的数量
+     * @return 已经遍历完时返回空列表
+     */
+    public List<File> nextPage(int pageSize) {
+        List<File> page = new ArrayList<File>(Math.min(pageSize, 256));
+        while (page.size() < pageSize && hasNext()) {
+            page.add(next());
+        }
+        return page;
+    }
+
+    @Override
+    public Iterator<File> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mCancelled) {
+            return false;
+        }
+        if (mNext == null) {
+            mNext = advance();
+        }
+        return mNext != null;
+    }
+
+    @Override
+    public File next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        File next = mNext;
+        mNext = null;
+        mCount++;
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private File advance() {
+        if (!mStarted) {
+            mStarted = true;
+            if (mRoot.isDirectory()) {
+                push(mRoot, 0);
+            } else if (mRoot.isFile() && mIncludeFiles
+                    && (mFileFilter == null
+                    || mFileFilter.accept(mRoot.getParentFile(), mRoot.getName()))) {
+                return mRoot;
+            }
+        }
+        while (!mStack.isEmpty() && !mCancelled) {
+            Frame frame = mStack.peek();
+            if (frame.mIndex >= frame.mNames.length) {
+                mStack.pop();
+                continue;
+            }
+            String name = frame.mNames[frame.mIndex++];
+            File child = new File(frame.mDir, name);
+            if (child.isDirectory()) {
+                if (frame.mDepth + 1 < mMaxDepth) {
+                    push(child, frame.mDepth + 1);
+                }
+                if (mIncludeDirectories) {
+                    return child;
+                }
+            } else if (mIncludeFiles
+                    && (mFileFilter == null || mFileFilter.accept(frame.mDir, name))) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private void push(File dir, int depth) {
+        String[] names = dir.list();
+        // 没有读权限的目录直接跳过
+        if (names != null && names.length > 0) {
+            mStack.push(new Frame(dir, names, depth));
+        }
+    }
+
+    private void checkNotStarted() {
+        if (mStarted) {
+            throw new IllegalStateException("Walk already started");
+        }
+    }
+
+    private static class Frame {
+        final File mDir;
+        final String[] mNames;
+        final int mDepth;
+        int mIndex;
+
+        Frame(File dir, String[] names, int depth) {
+            mDir = dir;
+            mNames = names;
+            mDepth = depth;
+        }
+    }
+}
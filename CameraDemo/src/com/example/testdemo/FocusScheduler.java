@@ -0,0 +1,289 @@
+package com.example.testdemo;
+
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.hardware.Camera.Area;
+import android.hardware.Camera.Parameters;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 点击对焦的调度。所有对焦请求在相机线程中依次执行，正在对焦时的新点击只保留最后一次，
+ * 被替换的点击直接丢弃，不会连续调用cancelAutoFocus、setParameters与autoFocus，
+ * 快速点击时部分手机(例如三星i9268)会因此出错。
+ * 从点击到onAutoFocus的延迟记录在 {@link LatencyHistogram} 中，结果在主线程中回调。
+ */
+public class FocusScheduler implements Camera.AutoFocusCallback {
+
+    private static final String TAG = "FocusScheduler";
+    // 部分手机不会回调onAutoFocus，超过这个时间认为对焦失败
+    public static final int FOCUS_TIMEOUT_MS = 3000;
+
+    /**
+     * 对焦结果的回调，在主线程中执行
+     */
+    public interface OnFocusListener {
+        /**
+         * @param success 是否对焦成功
+         * @param latency 从点击到对焦完成的时间，单位毫秒
+         * @param histogram 所有对焦延迟的分布
+         */
+        void onFocusFinished(boolean success, long latency, LatencyHistogram histogram);
+    }
+
+    private static class Request {
+        final Rect mFocusArea;
+        final Rect mMeteringArea;
+        final long mTapTime;
+
+        Request(Rect focusArea, Rect meteringArea, long tapTime) {
+            mFocusArea = focusArea;
+            mMeteringArea = meteringArea;
+            mTapTime = tapTime;
+        }
+    }
+
+    private final Camera mCamera;
+    private final CameraParameterCache mParameters;
+    private final CameraCapabilityCache.Capabilities mCapabilities;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+    private final Runnable mTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Log.w(TAG, "autoFocus timeout");
+            finish(false);
+        }
+    };
+    private volatile OnFocusListener mListener;
+    private volatile boolean mFocusSucc = true;
+    // 等待执行的最新请求，只在相机线程中读取
+    private Request mPending;
+    private Request mCurrent;
+    private int mDroppedCount;
+
+    /**
+     * @param camera 已经打开的相机
+     * @param parameters 相机的参数缓存
+     * @param capabilities 相机的能力，判断是否支持对焦与测光区域
+     * @param looper 相机线程的looper，见 {@link CameraDevice#getLooper()}
+     */
+    public FocusScheduler(Camera camera, CameraParameterCache parameters,
+            CameraCapabilityCache.Capabilities capabilities, Looper looper) {
+        mCamera = camera;
+        mParameters = parameters;
+        mCapabilities = capabilities;
+        mHandler = new Handler(looper);
+    }
+
+    public void setOnFocusListener(OnFocusListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return 最近一次对焦是否成功
+     */
+    public boolean isFocusSucc() {
+        return mFocusSucc;
+    }
+
+    /**
+     * @return 对焦延迟的分布
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return mHistogram;
+    }
+
+    /**
+     * @return 被后来的点击替换而丢弃的请求数
+     */
+    public synchronized int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * 请求对焦，可以在任何线程中调用
+     * 
+     * @param focusArea 对焦区域，-1000到1000的相机坐标，为null时不设置
+     * @param meteringArea 测光区域，为null时不设置
+     */
+    public void requestFocus(Rect focusArea, Rect meteringArea) {
+        final Request request = new Request(focusArea, meteringArea,
+                SystemClock.uptimeMillis());
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mPending != null) {
+                    synchronized (FocusScheduler.this) {
+                        mDroppedCount++;
+                    }
+                }
+                mPending = request;
+                process();
+            }
+        });
+    }
+
+    /**
+     * 取消正在进行与等待中的对焦，例如拍照之前
+     */
+    public void cancel() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPending = null;
+                if (mCurrent != null) {
+                    mHandler.removeCallbacks(mTimeoutRunnable);
+                    mCurrent = null;
+                    cancelAutoFocus();
+                }
+            }
+        });
+    }
+
+    /**
+     * 取消对焦，相机释放之前调用，之后不会再回调
+     */
+    public void release() {
+        mListener = null;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPending = null;
+                mHandler.removeCallbacks(mTimeoutRunnable);
+                if (mCurrent != null) {
+                    mCurrent = null;
+                    cancelAutoFocus();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onAutoFocus(final boolean success, Camera camera) {
+        // 相机在相机线程中打开时回调已经在相机线程中，仍然排队处理，与点击的顺序一致
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                finish(success);
+            }
+        });
+    }
+
+    /**
+     * 没有正在对焦时开始最新的请求，在相机线程中执行
+     */
+    private void process() {
+        if (mCurrent != null || mPending == null) {
+            return;
+        }
+        Request request = mPending;
+        mPending = null;
+        try {
+            mCamera.cancelAutoFocus();
+            applyAreas(request);
+            mCurrent = request;
+            mHandler.postDelayed(mTimeoutRunnable, FOCUS_TIMEOUT_MS);
+            mCamera.autoFocus(this);
+        } catch (RuntimeException e) {
+            // 相机正在拍照或者已经释放
+            Log.w(TAG, "autoFocus failed", e);
+            mHandler.removeCallbacks(mTimeoutRunnable);
+            mCurrent = null;
+            report(false, SystemClock.uptimeMillis() - request.mTapTime);
+        }
+    }
+
+    private void finish(boolean success) {
+        Request request = mCurrent;
+        if (request == null) {
+            // 已经超时或者被取消
+            return;
+        }
+        mHandler.removeCallbacks(mTimeoutRunnable);
+        mCurrent = null;
+        long latency = SystemClock.uptimeMillis() - request.mTapTime;
+        mHistogram.record(latency);
+        report(success, latency);
+        process();
+    }
+
+    private void report(final boolean success, final long latency) {
+        mFocusSucc = success;
+        final OnFocusListener listener = mListener;
+        if (listener == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFocusFinished(success, latency, mHistogram);
+            }
+        });
+    }
+
+    private void cancelAutoFocus() {
+        try {
+            mCamera.cancelAutoFocus();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "cancelAutoFocus failed", e);
+        }
+    }
+
+    /**
+     * 把对焦与测光区域写入参数缓存并立即提交
+     */
+    private void applyAreas(Request request) {
+        synchronized (mParameters) {
+            Parameters parameters = mParameters.getParameters();
+            if (request.mFocusArea != null && mCapabilities.isFocusAreaSupported()) {
+                parameters.setFocusMode(Parameters.FOCUS_MODE_AUTO);
+                initializeFocusAreas(request.mFocusArea, parameters);
+                mParameters.markDirty(CameraParameterCache.KEY_FOCUS_MODE);
+                mParameters.markDirty(CameraParameterCache.KEY_FOCUS_AREAS);
+            }
+            if (request.mMeteringArea != null && mCapabilities.isMeteringAreaSupported()) {
+                List<Camera.Area> listMeterArea = new ArrayList<Camera.Area>();
+                listMeterArea.add(new Camera.Area(request.mMeteringArea, 1));
+                parameters.setMeteringAreas(listMeterArea);
+                mParameters.markDirty(CameraParameterCache.KEY_METERING_AREAS);
+            }
+            // 对焦之前区域需要生效
+            mParameters.flush();
+        }
+    }
+
+    /**
+     * 把焦点设置到触摸位置附近的矩形区域
+     * 
+     * @param rect
+     * @param parameters
+     */
+    private void initializeFocusAreas(Rect rect, Parameters parameters) {
+        // 有时候会报数字转化错误。部分手机直接获取会报错。其中小米与nexus 4
+        // MessageQueue-JNIjava.lang.NumberFormatException: Invalid
+        // int: " 0"
+        List<Camera.Area> listFocusArea = null;
+        try {
+            listFocusArea = parameters.getFocusAreas();
+        } catch (NumberFormatException e) {
+            Log.i(TAG, "some devices parameters getfocusareas exception");
+            e.printStackTrace();
+        }
+
+        if (listFocusArea == null) {
+            listFocusArea = new ArrayList<Camera.Area>();
+            Area touchArea = new Camera.Area(rect, 1);
+            listFocusArea.add(touchArea);
+        } else {
+            Area touchArea = listFocusArea.get(0);
+            touchArea.rect = rect;
+        }
+        parameters.setFocusAreas(listFocusArea);
+    }
+}
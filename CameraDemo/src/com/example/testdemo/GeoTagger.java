@@ -0,0 +1,266 @@
+package com.example.testdemo;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 给目录中已经存在的照片批量写入gps信息。每张照片只读取exif并按流复制一遍替换exif，
+ * 不会解码图像数据，多张照片在多个线程中同时处理。
+ * 一张照片失败时记录下来继续处理其他照片，全部处理完以后在结果中返回。
+ * 需要在后台线程中调用。
+ */
+public class GeoTagger {
+
+    /**
+     * 决定每张照片的位置
+     */
+    public interface LocationProvider {
+        /**
+         * @param photo 照片文件
+         * @return [纬度, 经度]，返回null时跳过这张照片
+         */
+        double[] getLatLong(File photo);
+    }
+
+    /**
+     * 处理进度回调，在处理线程中执行
+     */
+    public interface ProgressListener {
+        /**
+         * 每处理完一张照片回调一次，跳过与失败的照片也会回调
+         * 
+         * @param filesDone 已经处理的照片数
+         * @param filesTotal 照片总数
+         */
+        void onProgress(int filesDone, int filesTotal);
+    }
+
+    /**
+     * 一次处理的结果
+     */
+    public static class Result {
+        private final int mTaggedCount;
+        private final Map<File, IOException> mFailures;
+
+        Result(int taggedCount, Map<File, IOException> failures) {
+            mTaggedCount = taggedCount;
+            mFailures = Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * @return 实际写入的照片数量，不包括跳过与失败的照片
+         */
+        public int getTaggedCount() {
+            return mTaggedCount;
+        }
+
+        /**
+         * @return 处理失败的照片与原因，按照片的顺序排列，失败的照片保持原样
+         */
+        public Map<File, IOException> getFailures() {
+            return mFailures;
+        }
+    }
+
+    private static final FilenameFilter JPEG_FILTER = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String filename) {
+            String name = filename.toLowerCase(Locale.US);
+            return name.endsWith(".jpg") || name.endsWith(".jpeg");
+        }
+    };
+
+    private final int mThreadCount;
+    private GpsEncoder mEncoder = GpsEncoder.getDefault();
+    private boolean mOverwrite = true;
+    private ProgressListener mListener;
+    private volatile boolean mCancelled;
+
+    public GeoTagger() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount 同时处理的线程数
+     */
+    public GeoTagger(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mThreadCount = threadCount;
+    }
+
+    /**
+     * 设置秒的精度，默认为 {@link GpsEncoder#getDefault()}
+     * 
+     * @param encoder
+     */
+    public void setEncoder(GpsEncoder encoder) {
+        mEncoder = encoder;
+    }
+
+    /**
+     * 已经有gps信息的照片是否重新写入，默认为true
+     * 
+     * @param overwrite
+     */
+    public void setOverwrite(boolean overwrite) {
+        mOverwrite = overwrite;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 取消正在进行的处理，tag会抛出InterruptedIOException，已经写入的照片不会恢复
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * 所有照片写入同一个位置
+     * 
+     * @param dir 照片目录，包括子目录中的jpg文件
+     * @param latitude 纬度，南纬为负数
+     * @param longitude 经度，西经为负数
+     * @return 写入的照片数量与失败的照片
+     * @throws InterruptedIOException 已经取消或者调用线程被中断
+     */
+    public Result tag(File dir, final double latitude, final double longitude)
+            throws InterruptedIOException {
+        return tag(dir, new LocationProvider() {
+            @Override
+            public double[] getLatLong(File photo) {
+                return new double[] {
+                        latitude, longitude
+                };
+            }
+        });
+    }
+
+    /**
+     * 每张照片写入provider给出的位置
+     * 
+     * @param dir 照片目录，包括子目录中的jpg文件
+     * @param provider 照片的位置，在处理线程中调用
+     * @return 写入的照片数量与失败的照片
+     * @throws InterruptedIOException 已经取消或者调用线程被中断
+     */
+    public Result tag(File dir, final LocationProvider provider) throws InterruptedIOException {
+        mCancelled = false;
+        List<File> photos = new ArrayList<File>();
+        for (File photo : new FileWalker(dir, JPEG_FILTER)) {
+            photos.add(photo);
+        }
+        final int filesTotal = photos.size();
+        final AtomicInteger filesDone = new AtomicInteger();
+        final AtomicInteger tagged = new AtomicInteger();
+        final Map<File, IOException> failures = new HashMap<File, IOException>();
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(filesTotal);
+            for (final File photo : photos) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedIOException {
+                        if (mCancelled) {
+                            throw new InterruptedIOException("Geotag cancelled");
+                        }
+                        IOException failure = null;
+                        try {
+                            double[] latLong = provider.getLatLong(photo);
+                            if (latLong != null && tagPhoto(photo, latLong[0], latLong[1])) {
+                                tagged.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            failure = e;
+                        } catch (RuntimeException e) {
+                            // 例如exif格式错误，与读写失败一样只影响这一张照片
+                            failure = new IOException("Can not geotag " + photo, e);
+                        }
+                        if (failure != null) {
+                            synchronized (failures) {
+                                failures.put(photo, failure);
+                            }
+                        }
+                        int done = filesDone.incrementAndGet();
+                        ProgressListener listener = mListener;
+                        if (listener != null) {
+                            listener.onProgress(done, filesTotal);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // 按照片的顺序排列失败的照片
+        Map<File, IOException> ordered = new LinkedHashMap<File, IOException>();
+        synchronized (failures) {
+            for (File photo : photos) {
+                IOException failure = failures.get(photo);
+                if (failure != null) {
+                    ordered.put(photo, failure);
+                }
+            }
+        }
+        return new Result(tagged.get(), ordered);
+    }
+
+    /**
+     * @return true写入了gps信息，false已经有gps信息而跳过
+     */
+    private boolean tagPhoto(File photo, double latitude, double longitude) throws IOException {
+        ExifData data = ExifReader.read(photo);
+        if (!mOverwrite && data != null
+                && data.getEntry(ExifData.IFD_GPS, ExifData.TAG_GPS_LATITUDE) != null) {
+            return false;
+        }
+        ExifWriter exif = new ExifWriter(data);
+        mEncoder.setLatLong(exif, latitude, longitude);
+        JpegExifSplicer.splice(photo, exif);
+        return true;
+    }
+
+    /**
+     * 每张照片的失败已经在任务中记录，任务只会因为取消而失败
+     */
+    private static void await(Future<Void> future) throws InterruptedIOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Geotag interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedIOException) {
+                throw (InterruptedIOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
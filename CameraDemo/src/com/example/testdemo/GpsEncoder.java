@@ -0,0 +1,91 @@
+package com.example.testdemo;
+
+/**
+ * 把经纬度转换成exif中的度、分、秒三个RATIONAL值。
+ * 直接用整数运算拆分，不经过字符串格式化，秒的精度由分母决定，例如分母为1000时精确到0.001秒。
+ * 先按精度四舍五入成秒的整数倍再拆分，不会出现60秒或者60分。
+ */
+public class GpsEncoder {
+
+    public static final int TAG_GPS_VERSION_ID = 0x0000;
+    // 0.001秒约为3厘米，超过gps本身的精度
+    public static final int DEFAULT_SECONDS_DENOMINATOR = 1000;
+    private static final byte[] GPS_VERSION = {
+            2, 2, 0, 0
+    };
+
+    private static GpsEncoder sDefault;
+
+    private final long mDenominator;
+
+    public static synchronized GpsEncoder getDefault() {
+        if (sDefault == null) {
+            sDefault = new GpsEncoder(DEFAULT_SECONDS_DENOMINATOR);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param secondsDenominator 秒的分母，1表示只保留整数秒，秒的分子不能超过32位无符号数
+     */
+    public GpsEncoder(int secondsDenominator) {
+        if (secondsDenominator < 1) {
+            throw new IllegalArgumentException("secondsDenominator must be positive");
+        }
+        if (60L * secondsDenominator > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("secondsDenominator too large");
+        }
+        mDenominator = secondsDenominator;
+    }
+
+    /**
+     * 计算度、分、秒的分子，分母依次为1、1与 {@link #getSecondsDenominator()}
+     * 
+     * @param coordinate 纬度或者经度，符号会被忽略
+     * @param numerators 长度至少为3，写入度、分、秒的分子
+     */
+    public void encode(double coordinate, long[] numerators) {
+        if (Double.isNaN(coordinate) || Double.isInfinite(coordinate)) {
+            throw new IllegalArgumentException("Invalid coordinate " + coordinate);
+        }
+        long perMinute = 60 * mDenominator;
+        long perDegree = 60 * perMinute;
+        long total = Math.round(Math.abs(coordinate) * perDegree);
+        numerators[0] = total / perDegree;
+        numerators[1] = total % perDegree / perMinute;
+        numerators[2] = total % perMinute;
+    }
+
+    public int getSecondsDenominator() {
+        return (int) mDenominator;
+    }
+
+    /**
+     * 设置exif中的GPS版本、经纬度与方向
+     * 
+     * @param exif 照片的exif
+     * @param latitude 纬度，南纬为负数
+     * @param longitude 经度，西经为负数
+     */
+    public void setLatLong(ExifWriter exif, double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90)) {
+            throw new IllegalArgumentException("Invalid latitude " + latitude);
+        }
+        if (!(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Invalid longitude " + longitude);
+        }
+        long[] numerators = new long[3];
+        long[] denominators = {
+                1, 1, mDenominator
+        };
+        if (!exif.contains(ExifData.IFD_GPS, TAG_GPS_VERSION_ID)) {
+            exif.setBytes(ExifData.IFD_GPS, TAG_GPS_VERSION_ID, ExifData.TYPE_BYTE, GPS_VERSION);
+        }
+        encode(latitude, numerators);
+        exif.setRational(ExifData.IFD_GPS, ExifData.TAG_GPS_LATITUDE, numerators, denominators);
+        exif.setAscii(ExifData.IFD_GPS, ExifData.TAG_GPS_LATITUDE_REF, latitude < 0 ? "S" : "N");
+        encode(longitude, numerators);
+        exif.setRational(ExifData.IFD_GPS, ExifData.TAG_GPS_LONGITUDE, numerators, denominators);
+        exif.setAscii(ExifData.IFD_GPS, ExifData.TAG_GPS_LONGITUDE_REF, longitude < 0 ? "W" : "E");
+    }
+}
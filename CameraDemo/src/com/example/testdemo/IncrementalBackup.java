@@ -0,0 +1,326 @@
+package com.example.testdemo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 照片目录的增量备份。备份目录中保存一份清单，记录每个文件的相对路径、大小、修改时间、
+ * 内容的SHA-1摘要以及所在的备份卷。每次备份只把新增或者内容变化的文件写入新的zip备份卷，
+ * 大小与修改时间都没有变化的文件不会被读取，需要计算摘要的文件在多个线程中同时计算。
+ * 修改时间变化但摘要相同的文件认为内容没有变化，crc32碰撞的概率太高，不能用来判断。
+ * 需要在后台线程中调用。
+ */
+public class IncrementalBackup {
+
+    public static final String MANIFEST_NAME = "backup.manifest";
+    public static final String VOLUME_PREFIX = "backup_";
+    public static final String VOLUME_SUFFIX = ".zip";
+    // 单个备份卷的默认大小上限
+    public static final long DEFAULT_MAX_VOLUME_SIZE = 512L * 1024 * 1024;
+    private static final int MAGIC = 0x424B4D46;
+    private static final int VERSION = 2;
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File mSourceDir;
+    private final File mBackupDir;
+    private final int mThreadCount;
+    private long mMaxVolumeSize = DEFAULT_MAX_VOLUME_SIZE;
+
+    /**
+     * @param sourceDir 需要备份的目录
+     * @param backupDir 备份卷与清单所在的目录，不能在sourceDir中
+     */
+    public IncrementalBackup(File sourceDir, File backupDir) {
+        this(sourceDir, backupDir, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param sourceDir 需要备份的目录
+     * @param backupDir 备份卷与清单所在的目录，不能在sourceDir中
+     * @param threadCount 计算摘要的线程数
+     */
+    public IncrementalBackup(File sourceDir, File backupDir, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mSourceDir = sourceDir.getAbsoluteFile();
+        mBackupDir = backupDir.getAbsoluteFile();
+        mThreadCount = threadCount;
+    }
+
+    public void setMaxVolumeSize(long maxVolumeSize) {
+        mMaxVolumeSize = maxVolumeSize;
+    }
+
+    /**
+     * 执行一次增量备份，成功以后才更新清单，失败时下次备份会重新写入这次的文件
+     * 
+     * @return 这次新建的备份卷，没有变化时为空
+     * @throws IOException
+     */
+    public List<File> run() throws IOException {
+        if (!mBackupDir.isDirectory() && !mBackupDir.mkdirs()) {
+            throw new IOException("Can not create directory " + mBackupDir);
+        }
+        File manifestFile = new File(mBackupDir, MANIFEST_NAME);
+        Map<String, Record> manifest = loadManifest(manifestFile);
+
+        List<File> files = new ArrayList<File>();
+        collect(mSourceDir, files);
+        Map<String, Record> records = new HashMap<String, Record>(files.size() * 2);
+        List<Record> candidates = new ArrayList<Record>();
+        for (File file : files) {
+            String path = relativePath(file);
+            Record old = manifest.get(path);
+            Record record = new Record(path, file.length(), file.lastModified());
+            if (old != null && old.mSize == record.mSize
+                    && old.mLastModified == record.mLastModified) {
+                records.put(path, old);
+            } else {
+                candidates.add(record);
+            }
+        }
+
+        // 只有大小或者修改时间变化的文件才需要读取内容
+        computeDigests(candidates);
+        List<Record> changed = new ArrayList<Record>();
+        for (Record record : candidates) {
+            Record old = manifest.get(record.mPath);
+            if (old != null && old.mSize == record.mSize
+                    && Arrays.equals(old.mDigest, record.mDigest)) {
+                // 只是修改时间变了，内容已经在之前的备份卷中
+                record.mVolume = old.mVolume;
+            } else {
+                changed.add(record);
+            }
+            records.put(record.mPath, record);
+        }
+
+        List<File> volumes = writeVolumes(changed);
+        if (!volumes.isEmpty() || !candidates.isEmpty() || records.size() != manifest.size()) {
+            saveManifest(manifestFile, records);
+        }
+        return volumes;
+    }
+
+    private void collect(File dir, List<File> files) {
+        if (dir.equals(mBackupDir)) {
+            return;
+        }
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else {
+                files.add(child);
+            }
+        }
+    }
+
+    private String relativePath(File file) {
+        return file.getPath().substring(mSourceDir.getPath().length() + 1)
+                .replace(File.separatorChar, '/');
+    }
+
+    private void computeDigests(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(records.size());
+            for (final Record record : records) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        record.mDigest = digest(new File(mSourceDir, record.mPath));
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Backup interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to read " + mSourceDir, cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] digest(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * 按大小上限把变化的文件分成多个备份卷写入
+     */
+    private List<File> writeVolumes(List<Record> changed) throws IOException {
+        List<File> volumes = new ArrayList<File>();
+        if (changed.isEmpty()) {
+            return volumes;
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        ZipExporter exporter = new ZipExporter(mThreadCount);
+        int start = 0;
+        int index = 0;
+        while (start < changed.size()) {
+            long size = 0;
+            int end = start;
+            while (end < changed.size()
+                    && (end == start || size + changed.get(end).mSize <= mMaxVolumeSize)) {
+                size += changed.get(end).mSize;
+                end++;
+            }
+            File volume;
+            do {
+                volume = new File(mBackupDir, VOLUME_PREFIX + stamp + "_" + index++
+                        + VOLUME_SUFFIX);
+            } while (volume.exists());
+            List<File> files = new ArrayList<File>(end - start);
+            for (int i = start; i < end; i++) {
+                Record record = changed.get(i);
+                record.mVolume = volume.getName();
+                files.add(new File(mSourceDir, record.mPath));
+            }
+            try {
+                exporter.export(files, mSourceDir, volume);
+            } catch (IOException e) {
+                // 清单没有更新，这次已经写好的备份卷也没有用了
+                for (File written : volumes) {
+                    written.delete();
+                }
+                throw e;
+            }
+            volumes.add(volume);
+            start = end;
+        }
+        return volumes;
+    }
+
+    private static Map<String, Record> loadManifest(File file) {
+        Map<String, Record> records = new HashMap<String, Record>();
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return records;
+        }
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return records;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Record record = new Record(in.readUTF(), in.readLong(), in.readLong());
+                record.mDigest = new byte[in.readUnsignedByte()];
+                in.readFully(record.mDigest);
+                record.mVolume = in.readUTF();
+                records.put(record.mPath, record);
+            }
+        } catch (IOException e) {
+            // 清单损坏，全部文件重新备份
+            records.clear();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return records;
+    }
+
+    private static void saveManifest(File file, Map<String, Record> records)
+            throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(records.size());
+            for (Record record : records.values()) {
+                out.writeUTF(record.mPath);
+                out.writeLong(record.mSize);
+                out.writeLong(record.mLastModified);
+                out.writeByte(record.mDigest.length);
+                out.write(record.mDigest);
+                out.writeUTF(record.mVolume == null ? "" : record.mVolume);
+            }
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can not rename " + temp + " to " + file);
+        }
+    }
+
+    private static class Record {
+        final String mPath;
+        final long mSize;
+        final long mLastModified;
+        byte[] mDigest;
+        // 文件内容所在的备份卷
+        String mVolume;
+
+        Record(String path, long size, long lastModified) {
+            mPath = path;
+            mSize = size;
+            mLastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.testdemo;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 替换jpeg中的exif。原有的exif所在的APP1段被删除，新的APP1段放在SOI之后，
+ * 有JFIF的APP0段时放在APP0之后，其余的段与图像数据原样保留，不需要解码图像。
+ * 内存中的照片只分配一次结果数组；文件按流复制，只需要一个段大小的缓存。
+ */
+public class JpegExifSplicer {
+
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_APP15 = 0xEF;
+    // 最长的APPn段加上marker共0xFFFF + 2字节，ICC配置文件常常按这个长度分段
+    private static final int BUFFER_SIZE = 0xFFFF + 2;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private JpegExifSplicer() {
+    }
+
+    /**
+     * 替换内存中的jpeg数据的exif，用于照片写入文件之前
+     * 
+     * @param jpeg jpeg数据
+     * @param exif 新的exif
+     * @return 新的jpeg数据
+     * @throws IOException 不是jpeg数据或者exif过大
+     */
+    public static byte[] splice(byte[] jpeg, ExifWriter exif) throws IOException {
+        byte[] app1 = exif.toApp1();
+        if (jpeg.length < 4 || (jpeg[0] & 0xFF) != MARKER_PREFIX
+                || (jpeg[1] & 0xFF) != MARKER_SOI) {
+            throw new IOException("Not a jpeg");
+        }
+        // 只遍历开头的APPn段，第一个其他段之后的数据整块复制
+        int[] segments = new int[32];
+        int count = 0;
+        int position = 2;
+        while (position + 4 <= jpeg.length && (jpeg[position] & 0xFF) == MARKER_PREFIX) {
+            int marker = jpeg[position + 1] & 0xFF;
+            if (marker < MARKER_APP0 || marker > MARKER_APP15) {
+                break;
+            }
+            int end = position + 2 + (((jpeg[position + 2] & 0xFF) << 8)
+                    | (jpeg[position + 3] & 0xFF));
+            if (end > jpeg.length) {
+                throw new IOException("Truncated jpeg");
+            }
+            if (count == segments.length) {
+                int[] grown = new int[count * 2];
+                System.arraycopy(segments, 0, grown, 0, count);
+                segments = grown;
+            }
+            segments[count++] = position;
+            position = end;
+        }
+
+        int removed = 0;
+        for (int i = 0; i < count; i++) {
+            if (isExif(jpeg, segments[i])) {
+                removed += segmentEnd(jpeg, segments[i]) - segments[i];
+            }
+        }
+        byte[] result = new byte[jpeg.length - removed + app1.length];
+        result[0] = (byte) MARKER_PREFIX;
+        result[1] = (byte) MARKER_SOI;
+        int out = 2;
+        int first = 0;
+        if (count > 0 && (jpeg[segments[0] + 1] & 0xFF) == MARKER_APP0) {
+            int end = segmentEnd(jpeg, segments[0]);
+            System.arraycopy(jpeg, segments[0], result, out, end - segments[0]);
+            out += end - segments[0];
+            first = 1;
+        }
+        System.arraycopy(app1, 0, result, out, app1.length);
+        out += app1.length;
+        for (int i = first; i < count; i++) {
+            if (!isExif(jpeg, segments[i])) {
+                int end = segmentEnd(jpeg, segments[i]);
+                System.arraycopy(jpeg, segments[i], result, out, end - segments[i]);
+                out += end - segments[i];
+            }
+        }
+        System.arraycopy(jpeg, position, result, out, jpeg.length - position);
+        return result;
+    }
+
+    /**
+     * 边复制边替换exif，不会关闭两个流
+     * 
+     * @param in jpeg数据流
+     * @param out 新的jpeg数据写入这里
+     * @param exif 新的exif
+     * @throws IOException
+     */
+    public static void splice(InputStream in, OutputStream out, ExifWriter exif)
+            throws IOException {
+        byte[] app1 = exif.toApp1();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        readFully(in, buffer, 0, 2);
+        if ((buffer[0] & 0xFF) != MARKER_PREFIX || (buffer[1] & 0xFF) != MARKER_SOI) {
+            throw new IOException("Not a jpeg");
+        }
+        out.write(buffer, 0, 2);
+        boolean written = false;
+        boolean first = true;
+        while (true) {
+            int count = readAtMost(in, buffer, 0, 2);
+            int marker = count == 2 && (buffer[0] & 0xFF) == MARKER_PREFIX ? buffer[1] & 0xFF
+                    : -1;
+            if (marker < MARKER_APP0 || marker > MARKER_APP15) {
+                // APPn段结束，剩下的数据原样复制
+                if (!written) {
+                    out.write(app1);
+                }
+                out.write(buffer, 0, count);
+                break;
+            }
+            readFully(in, buffer, 2, 2);
+            int length = ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF);
+            readFully(in, buffer, 4, length - 2);
+            if (first && marker == MARKER_APP0) {
+                out.write(buffer, 0, length + 2);
+            } else if (!isExif(buffer, 0)) {
+                if (!written) {
+                    out.write(app1);
+                    written = true;
+                }
+                out.write(buffer, 0, length + 2);
+            }
+            first = false;
+        }
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    /**
+     * 替换jpeg文件的exif，先写入临时文件再重命名成原来的文件
+     * 
+     * @param jpeg jpeg文件
+     * @param exif 新的exif
+     * @throws IOException
+     */
+    public static void splice(File jpeg, ExifWriter exif) throws IOException {
+        File temp = new File(jpeg.getPath() + TEMP_SUFFIX);
+        InputStream in = new BufferedInputStream(new FileInputStream(jpeg), BUFFER_SIZE);
+        boolean renamed = false;
+        try {
+            try {
+                FileOutputStream out = new FileOutputStream(temp);
+                try {
+                    splice(in, out, exif);
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            if (!temp.renameTo(jpeg)) {
+                throw new IOException("Can not rename " + temp + " to " + jpeg);
+            }
+            renamed = true;
+        } finally {
+            // 包括RuntimeException在内的任何失败都不留下临时文件
+            if (!renamed) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static int segmentEnd(byte[] jpeg, int position) {
+        return position + 2 + (((jpeg[position + 2] & 0xFF) << 8) | (jpeg[position + 3] & 0xFF));
+    }
+
+    /**
+     * position处的段是否是exif所在的APP1段，XMP等其他APP1段会保留
+     */
+    private static boolean isExif(byte[] data, int position) {
+        return (data[position + 1] & 0xFF) == MARKER_APP1
+                && segmentEnd(data, position) - position >= 10
+                && data[position + 4] == 'E' && data[position + 5] == 'x'
+                && data[position + 6] == 'i' && data[position + 7] == 'f'
+                && data[position + 8] == 0 && data[position + 9] == 0;
+    }
+
+    private static int readAtMost(InputStream in, byte[] buffer, int offset, int length)
+            throws IOException {
+        int total = 0;
+        while (total < length) {
+            int count = in.read(buffer, offset + total, length - total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int offset, int length)
+            throws IOException {
+        if (length < 0 || readAtMost(in, buffer, offset, length) < length) {
+            throw new EOFException("Truncated jpeg");
+        }
+    }
+}
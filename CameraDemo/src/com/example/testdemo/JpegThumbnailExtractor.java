@@ -0,0 +1,769 @@
+package com.example.testdemo;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 不做完整解码取得jpeg的缩略图。exif的IFD1中有足够大并且宽高比与照片相同的缩略图时直接返回缩略图的jpeg数据，
+ * 有的相机的缩略图固定为160x120，宽高比不同时有黑边，不会使用；
+ * 否则只解码每个8x8块的DC系数，DC系数就是块的平均值，不需要反DCT，直接得到1/8大小的图像。
+ * AC系数仍然需要经过huffman解码才能跳过，但是不做反量化与反DCT，也不需要逐像素做颜色转换。
+ * 只支持huffman编码的8位基线与扩展顺序模式，相机拍摄的照片都是这种模式；
+ * 渐进、算术编码与CMYK的jpeg返回null，由调用者改用完整解码。
+ */
+public class JpegThumbnailExtractor {
+
+    // DC解码的缩小倍数
+    public static final int SCALE = 8;
+
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_DQT = 0xDB;
+    private static final int MARKER_DRI = 0xDD;
+    private static final int MARKER_DHT = 0xC4;
+    private static final int MARKER_SOF0 = 0xC0;
+    private static final int MARKER_SOF1 = 0xC1;
+    private static final int MARKER_SOF15 = 0xCF;
+    private static final int MARKER_JPG = 0xC8;
+    private static final int MARKER_DAC = 0xCC;
+    private static final int MARKER_RST0 = 0xD0;
+    private static final int MARKER_RST7 = 0xD7;
+    private static final int MARKER_APP14 = 0xEE;
+    private static final int MARKER_TEM = 0x01;
+
+    /**
+     * 缩略图，exif中的缩略图只有jpeg数据，DC解码的结果只有像素
+     */
+    public static class Thumbnail {
+        private final byte[] mJpeg;
+        private final int[] mPixels;
+        private final int mWidth;
+        private final int mHeight;
+
+        Thumbnail(byte[] jpeg, int[] pixels, int width, int height) {
+            mJpeg = jpeg;
+            mPixels = pixels;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        /**
+         * @return 是否是exif中的缩略图
+         */
+        public boolean isExifThumbnail() {
+            return mJpeg != null;
+        }
+
+        /**
+         * @return exif中的缩略图的jpeg数据，DC解码的结果为null
+         */
+        public byte[] getJpeg() {
+            return mJpeg;
+        }
+
+        /**
+         * @return DC解码的ARGB像素，按行排列，exif中的缩略图为null
+         */
+        public int[] getPixels() {
+            return mPixels;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+    }
+
+    private JpegThumbnailExtractor() {
+    }
+
+    /**
+     * 取得内存中的jpeg数据的缩略图
+     * 
+     * @param jpeg jpeg数据
+     * @param minWidth exif中的缩略图至少需要的宽度，不够时改用DC解码
+     * @param minHeight exif中的缩略图至少需要的高度
+     * @return 不支持的编码方式时返回null
+     * @throws IOException 不是jpeg数据或者数据损坏
+     */
+    public static Thumbnail extract(byte[] jpeg, int minWidth, int minHeight) throws IOException {
+        Thumbnail thumbnail = extractExif(jpeg, minWidth, minHeight);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        return decodeDc(jpeg);
+    }
+
+    /**
+     * 只取exif中的缩略图，不做DC解码，只读取到帧头
+     * 
+     * @param jpeg jpeg数据
+     * @param minWidth 缩略图至少需要的宽度
+     * @param minHeight 缩略图至少需要的高度
+     * @return 没有足够大并且宽高比相同的缩略图，或者不支持的编码方式时返回null
+     * @throws IOException 不是jpeg数据或者数据损坏
+     */
+    public static Thumbnail extractExif(byte[] jpeg, int minWidth, int minHeight)
+            throws IOException {
+        DcDecoder decoder = new DcDecoder(jpeg);
+        if (!decoder.readFrame()) {
+            return null;
+        }
+        return fromExif(ExifReader.read(ByteBuffer.wrap(jpeg)), decoder.mWidth,
+                decoder.mHeight, minWidth, minHeight);
+    }
+
+    /**
+     * 取得jpeg文件的缩略图，使用exif中的缩略图时只读取文件头
+     * 
+     * @param file jpeg文件
+     * @param minWidth exif中的缩略图至少需要的宽度，不够时改用DC解码
+     * @param minHeight exif中的缩略图至少需要的高度
+     * @return 不支持的编码方式时返回null
+     * @throws IOException
+     */
+    public static Thumbnail extract(File file, int minWidth, int minHeight) throws IOException {
+        int[] size = new int[2];
+        Thumbnail thumbnail = fromExif(ExifReader.read(file, size), size[0], size[1], minWidth,
+                minHeight);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        return decodeDc(readFile(file));
+    }
+
+    /**
+     * 取出exif的IFD1中的缩略图
+     * 
+     * @param exif 照片的exif，可以为null
+     * @return 缩略图的jpeg数据，没有时返回null
+     */
+    public static byte[] getExifThumbnail(ExifData exif) {
+        if (exif == null) {
+            return null;
+        }
+        // 数量为0的entry与没有这个tag一样处理
+        int start = exif.getInt(ExifData.IFD_1, ExifData.TAG_JPEG_INTERCHANGE_FORMAT, 0);
+        int size = exif.getInt(ExifData.IFD_1, ExifData.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH, 0);
+        if (start <= 0 || size <= 0) {
+            return null;
+        }
+        ByteBuffer tiff = exif.getTiffBuffer();
+        if (start > tiff.limit() - size) {
+            return null;
+        }
+        byte[] thumbnail = new byte[size];
+        tiff.position(start);
+        tiff.get(thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * 只解码DC系数，得到宽高为原图1/8(向上取整)的图像
+     * 
+     * @param jpeg jpeg数据
+     * @return 不支持的编码方式时返回null
+     * @throws IOException 不是jpeg数据或者数据损坏
+     */
+    public static Thumbnail decodeDc(byte[] jpeg) throws IOException {
+        DcDecoder decoder = new DcDecoder(jpeg);
+        if (!decoder.decode()) {
+            return null;
+        }
+        int width = (decoder.mWidth + SCALE - 1) / SCALE;
+        int height = (decoder.mHeight + SCALE - 1) / SCALE;
+        return new Thumbnail(null, decoder.toArgb(width, height), width, height);
+    }
+
+    private static Thumbnail fromExif(ExifData exif, int width, int height, int minWidth,
+            int minHeight) {
+        byte[] jpeg = getExifThumbnail(exif);
+        if (jpeg == null) {
+            return null;
+        }
+        DcDecoder decoder = new DcDecoder(jpeg);
+        try {
+            if (!decoder.readFrame()) {
+                return null;
+            }
+        } catch (IOException e) {
+            // 缩略图损坏时改用DC解码
+            return null;
+        }
+        if (decoder.mWidth < minWidth || decoder.mHeight < minHeight) {
+            return null;
+        }
+        // 宽高比相差超过1%时认为缩略图有黑边或者被裁剪
+        long difference = (long) decoder.mWidth * height - (long) decoder.mHeight * width;
+        if (width <= 0 || height <= 0
+                || Math.abs(difference) * 100 > (long) decoder.mHeight * width) {
+            return null;
+        }
+        return new Thumbnail(jpeg, null, decoder.mWidth, decoder.mHeight);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("File too large " + file);
+        }
+        byte[] data = new byte[(int) length];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int total = 0;
+            while (total < data.length) {
+                int count = in.read(data, total, data.length - total);
+                if (count < 0) {
+                    throw new EOFException("Truncated jpeg " + file);
+                }
+                total += count;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * 规范huffman表，码长不超过LOOKUP_BITS的码直接查表
+     */
+    private static class HuffmanTable {
+        static final int LOOKUP_BITS = 9;
+
+        // 高8位为码长，低8位为符号，0表示码长超过LOOKUP_BITS
+        final int[] mLookup = new int[1 << LOOKUP_BITS];
+        // 每个码长的最大码，没有这个码长的码时为-1
+        final int[] mMaxCode = new int[17];
+        // 每个码长的第一个符号在mValues中的位置减去第一个码
+        final int[] mValueOffset = new int[17];
+        final byte[] mValues;
+
+        /**
+         * @throws IOException 某个码长的码的数量超过这个码长能表示的数量
+         */
+        HuffmanTable(byte[] counts, byte[] values) throws IOException {
+            mValues = values;
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                int count = counts[length - 1] & 0xFF;
+                mValueOffset[length] = index - code;
+                for (int i = 0; i < count; i++) {
+                    if (code >= 1 << length || index >= values.length) {
+                        throw new IOException("Invalid huffman table");
+                    }
+                    if (length <= LOOKUP_BITS) {
+                        int shift = LOOKUP_BITS - length;
+                        int entry = (length << 8) | (values[index] & 0xFF);
+                        for (int j = code << shift; j < (code + 1) << shift; j++) {
+                            mLookup[j] = entry;
+                        }
+                    }
+                    code++;
+                    index++;
+                }
+                mMaxCode[length] = count > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+        }
+    }
+
+    private static class Component {
+        int mId;
+        int mH;
+        int mV;
+        int mQuantTable;
+        int mDcTable;
+        int mAcTable;
+        int mPrediction;
+        // 每行的块数，按MCU对齐
+        int mStride;
+        // 每个块的DC系数乘以量化值
+        int[] mBlocks;
+    }
+
+    /**
+     * 按段读取jpeg，在熵编码数据中只保留每个块的DC值
+     */
+    private static class DcDecoder {
+        private final byte[] mData;
+        private int mPosition;
+        private int mWidth;
+        private int mHeight;
+        private Component[] mComponents;
+        private int mMaxH;
+        private int mMaxV;
+        private int mMcusX;
+        private int mMcusY;
+        private int mRestartInterval;
+        private int mAdobeTransform = -1;
+        private final int[] mQuantDc = new int[4];
+        private final HuffmanTable[] mDcTables = new HuffmanTable[4];
+        private final HuffmanTable[] mAcTables = new HuffmanTable[4];
+
+        // 左对齐的位缓存
+        private int mBits;
+        private int mBitCount;
+        private boolean mMarkerReached;
+
+        DcDecoder(byte[] data) {
+            mData = data;
+        }
+
+        /**
+         * 只读取到SOF段取得宽高
+         * 
+         * @return 不支持的编码方式时返回false
+         */
+        boolean readFrame() throws IOException {
+            return readSegments(true) != MARKER_EOI && mComponents != null;
+        }
+
+        /**
+         * 解码所有的扫描段
+         * 
+         * @return 不支持的编码方式时返回false
+         */
+        boolean decode() throws IOException {
+            while (true) {
+                int marker = readSegments(false);
+                if (marker == MARKER_EOI) {
+                    return mComponents != null;
+                }
+                if (marker != MARKER_SOS) {
+                    return false;
+                }
+                if (!readScan()) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * 读取段直到SOS或者EOI，stopAtFrame为true时读完SOF就返回
+         * 
+         * @return SOS、EOI、SOF，不支持的编码方式时返回-1
+         */
+        private int readSegments(boolean stopAtFrame) throws IOException {
+            if (mPosition == 0) {
+                if (mData.length < 2 || (mData[0] & 0xFF) != MARKER_PREFIX
+                        || (mData[1] & 0xFF) != MARKER_SOI) {
+                    throw new IOException("Not a jpeg");
+                }
+                mPosition = 2;
+            }
+            while (true) {
+                if (mPosition >= mData.length) {
+                    // 文件不完整，已经解码的部分仍然可以使用
+                    return MARKER_EOI;
+                }
+                if ((mData[mPosition] & 0xFF) != MARKER_PREFIX) {
+                    // 跳过扫描段之后的填充数据
+                    mPosition++;
+                    continue;
+                }
+                int marker = 0xFF;
+                while (marker == 0xFF && ++mPosition < mData.length) {
+                    marker = mData[mPosition] & 0xFF;
+                }
+                mPosition++;
+                if (marker == MARKER_EOI) {
+                    return MARKER_EOI;
+                }
+                if (marker == 0 || marker == MARKER_SOI || marker == MARKER_TEM
+                        || (marker >= MARKER_RST0 && marker <= MARKER_RST7)) {
+                    continue;
+                }
+                int length = readShort() - 2;
+                if (length < 0 || mPosition + length > mData.length) {
+                    throw new EOFException("Truncated jpeg");
+                }
+                int end = mPosition + length;
+                if (marker == MARKER_SOS) {
+                    if (length < 1 || length < 1 + 2 * (mData[mPosition] & 0xFF) + 3) {
+                        throw new IOException("Invalid scan header");
+                    }
+                    return MARKER_SOS;
+                }
+                if (marker == MARKER_SOF0 || marker == MARKER_SOF1) {
+                    if (!readFrameHeader(end)) {
+                        return -1;
+                    }
+                    if (stopAtFrame) {
+                        return marker;
+                    }
+                } else if (marker >= MARKER_SOF0 && marker <= MARKER_SOF15
+                        && marker != MARKER_DHT && marker != MARKER_JPG
+                        && marker != MARKER_DAC) {
+                    // 渐进、无损或者算术编码
+                    return -1;
+                } else if (marker == MARKER_DQT) {
+                    readQuantTables(end);
+                } else if (marker == MARKER_DHT) {
+                    readHuffmanTables(end);
+                } else if (marker == MARKER_DRI) {
+                    mRestartInterval = readShort();
+                } else if (marker == MARKER_APP14 && length >= 12 && mData[mPosition] == 'A'
+                        && mData[mPosition + 1] == 'd' && mData[mPosition + 2] == 'o'
+                        && mData[mPosition + 3] == 'b' && mData[mPosition + 4] == 'e') {
+                    mAdobeTransform = mData[mPosition + 11] & 0xFF;
+                }
+                mPosition = end;
+            }
+        }
+
+        private boolean readFrameHeader(int end) throws IOException {
+            if (end - mPosition < 6) {
+                throw new IOException("Invalid frame header");
+            }
+            int precision = mData[mPosition++] & 0xFF;
+            mHeight = readShort();
+            mWidth = readShort();
+            int count = mData[mPosition++] & 0xFF;
+            if (end - mPosition < 3 * count) {
+                throw new IOException("Invalid frame header");
+            }
+            // 12位精度、高度在DNL中定义、CMYK都不支持
+            if (precision != 8 || mWidth == 0 || mHeight == 0 || (count != 1 && count != 3)) {
+                return false;
+            }
+            mComponents = new Component[count];
+            mMaxH = 1;
+            mMaxV = 1;
+            for (int i = 0; i < count; i++) {
+                Component component = new Component();
+                component.mId = mData[mPosition++] & 0xFF;
+                int sampling = mData[mPosition++] & 0xFF;
+                component.mH = sampling >> 4;
+                component.mV = sampling & 0x0F;
+                component.mQuantTable = mData[mPosition++] & 0x03;
+                if (component.mH < 1 || component.mH > 4 || component.mV < 1
+                        || component.mV > 4) {
+                    throw new IOException("Invalid sampling factor");
+                }
+                mMaxH = Math.max(mMaxH, component.mH);
+                mMaxV = Math.max(mMaxV, component.mV);
+                mComponents[i] = component;
+            }
+            int mcuWidth = 8 * mMaxH;
+            int mcuHeight = 8 * mMaxV;
+            mMcusX = (mWidth + mcuWidth - 1) / mcuWidth;
+            mMcusY = (mHeight + mcuHeight - 1) / mcuHeight;
+            for (Component component : mComponents) {
+                component.mStride = mMcusX * component.mH;
+                component.mBlocks = new int[component.mStride * mMcusY * component.mV];
+            }
+            return true;
+        }
+
+        private void readQuantTables(int end) throws IOException {
+            while (mPosition < end) {
+                int info = mData[mPosition++] & 0xFF;
+                boolean sixteenBits = (info >> 4) != 0;
+                int size = sixteenBits ? 128 : 64;
+                if (end - mPosition < size) {
+                    throw new IOException("Invalid quantization table");
+                }
+                // 只需要第一个值，也就是DC的量化值
+                mQuantDc[info & 0x03] = sixteenBits
+                        ? ((mData[mPosition] & 0xFF) << 8) | (mData[mPosition + 1] & 0xFF)
+                        : mData[mPosition] & 0xFF;
+                mPosition += size;
+            }
+        }
+
+        private void readHuffmanTables(int end) throws IOException {
+            while (mPosition < end) {
+                int info = mData[mPosition++] & 0xFF;
+                if (end - mPosition < 16) {
+                    throw new IOException("Invalid huffman table");
+                }
+                byte[] counts = new byte[16];
+                System.arraycopy(mData, mPosition, counts, 0, 16);
+                mPosition += 16;
+                int total = 0;
+                for (byte count : counts) {
+                    total += count & 0xFF;
+                }
+                if (total > 256 || mPosition + total > end) {
+                    throw new IOException("Invalid huffman table");
+                }
+                byte[] values = new byte[total];
+                System.arraycopy(mData, mPosition, values, 0, total);
+                mPosition += total;
+                HuffmanTable table = new HuffmanTable(counts, values);
+                if ((info >> 4) == 0) {
+                    mDcTables[info & 0x03] = table;
+                } else {
+                    mAcTables[info & 0x03] = table;
+                }
+            }
+        }
+
+        /**
+         * 读取SOS段头并解码紧接着的熵编码数据
+         */
+        private boolean readScan() throws IOException {
+            if (mComponents == null) {
+                throw new IOException("Scan before frame");
+            }
+            int count = mData[mPosition++] & 0xFF;
+            Component[] components = new Component[count];
+            for (int i = 0; i < count; i++) {
+                int id = mData[mPosition++] & 0xFF;
+                int tables = mData[mPosition++] & 0xFF;
+                for (Component component : mComponents) {
+                    if (component.mId == id) {
+                        components[i] = component;
+                    }
+                }
+                if (components[i] == null) {
+                    throw new IOException("Unknown component " + id);
+                }
+                components[i].mDcTable = tables >> 4 & 0x03;
+                components[i].mAcTable = tables & 0x03;
+                if (mDcTables[components[i].mDcTable] == null
+                        || mAcTables[components[i].mAcTable] == null) {
+                    throw new IOException("Missing huffman table");
+                }
+            }
+            // 顺序模式的Ss、Se、Ah/Al固定为0、63、0
+            mPosition += 3;
+            decodeScan(components);
+            return true;
+        }
+
+        private void decodeScan(Component[] components) throws IOException {
+            resetBits();
+            for (Component component : components) {
+                component.mPrediction = 0;
+            }
+            int blocksX;
+            int blocksY;
+            if (components.length == 1) {
+                // 单个分量的扫描不按MCU交织，每个MCU只有一个块
+                Component component = components[0];
+                int width = (mWidth * component.mH + mMaxH - 1) / mMaxH;
+                int height = (mHeight * component.mV + mMaxV - 1) / mMaxV;
+                blocksX = (width + 7) / 8;
+                blocksY = (height + 7) / 8;
+            } else {
+                blocksX = mMcusX;
+                blocksY = mMcusY;
+            }
+            int total = blocksX * blocksY;
+            for (int mcu = 0; mcu < total; mcu++) {
+                if (mRestartInterval > 0 && mcu > 0 && mcu % mRestartInterval == 0) {
+                    restart(components);
+                }
+                int mcuX = mcu % blocksX;
+                int mcuY = mcu / blocksX;
+                if (components.length == 1) {
+                    Component component = components[0];
+                    decodeBlock(component, mcuY * component.mStride + mcuX);
+                    continue;
+                }
+                for (Component component : components) {
+                    for (int v = 0; v < component.mV; v++) {
+                        int row = (mcuY * component.mV + v) * component.mStride;
+                        for (int h = 0; h < component.mH; h++) {
+                            decodeBlock(component, row + mcuX * component.mH + h);
+                        }
+                    }
+                }
+            }
+            // 停在下一个标记之前
+            while (mPosition + 1 < mData.length) {
+                int next = mData[mPosition + 1] & 0xFF;
+                if ((mData[mPosition] & 0xFF) == MARKER_PREFIX && next != 0
+                        && next != MARKER_PREFIX && (next < MARKER_RST0 || next > MARKER_RST7)) {
+                    break;
+                }
+                mPosition++;
+            }
+        }
+
+        private void decodeBlock(Component component, int index) throws IOException {
+            HuffmanTable ac = mAcTables[component.mAcTable];
+            int size = decodeHuffman(mDcTables[component.mDcTable]);
+            component.mPrediction += receiveExtend(size);
+            component.mBlocks[index] = component.mPrediction * mQuantDc[component.mQuantTable];
+            // AC系数只跳过，不需要计算值
+            for (int k = 1; k < 64; k++) {
+                int symbol = decodeHuffman(ac);
+                int run = symbol >> 4;
+                size = symbol & 0x0F;
+                if (size == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 15;
+                } else {
+                    k += run;
+                    skipBits(size);
+                }
+            }
+        }
+
+        /**
+         * 丢弃剩余的位，跳过RSTn标记并重置DC预测值
+         */
+        private void restart(Component[] components) {
+            while (mPosition + 1 < mData.length) {
+                int next = mData[mPosition + 1] & 0xFF;
+                if ((mData[mPosition] & 0xFF) == MARKER_PREFIX && next >= MARKER_RST0
+                        && next <= MARKER_RST7) {
+                    mPosition += 2;
+                    break;
+                }
+                mPosition++;
+            }
+            resetBits();
+            for (Component component : components) {
+                component.mPrediction = 0;
+            }
+        }
+
+        private void resetBits() {
+            mBits = 0;
+            mBitCount = 0;
+            mMarkerReached = false;
+        }
+
+        /**
+         * 保证位缓存中至少有25位，遇到标记以后补0
+         */
+        private void fillBits() {
+            while (mBitCount <= 24) {
+                int value = 0;
+                if (!mMarkerReached && mPosition < mData.length) {
+                    value = mData[mPosition] & 0xFF;
+                    if (value != MARKER_PREFIX) {
+                        mPosition++;
+                    } else if (mPosition + 1 < mData.length && mData[mPosition + 1] == 0) {
+                        // 0xFF后面填充的0
+                        mPosition += 2;
+                    } else {
+                        mMarkerReached = true;
+                        value = 0;
+                    }
+                }
+                mBits |= value << (24 - mBitCount);
+                mBitCount += 8;
+            }
+        }
+
+        private int decodeHuffman(HuffmanTable table) throws IOException {
+            fillBits();
+            int entry = table.mLookup[mBits >>> (32 - HuffmanTable.LOOKUP_BITS)];
+            if (entry != 0) {
+                skipBits(entry >> 8);
+                return entry & 0xFF;
+            }
+            for (int length = HuffmanTable.LOOKUP_BITS + 1; length <= 16; length++) {
+                int code = mBits >>> (32 - length);
+                if (code <= table.mMaxCode[length]) {
+                    int index = code + table.mValueOffset[length];
+                    if (index < 0 || index >= table.mValues.length) {
+                        throw new IOException("Invalid huffman code");
+                    }
+                    skipBits(length);
+                    return table.mValues[index] & 0xFF;
+                }
+            }
+            throw new IOException("Invalid huffman code");
+        }
+
+        private int receiveExtend(int size) throws IOException {
+            if (size == 0) {
+                return 0;
+            }
+            if (size > 16) {
+                throw new IOException("Invalid coefficient size " + size);
+            }
+            fillBits();
+            int value = mBits >>> (32 - size);
+            mBits <<= size;
+            mBitCount -= size;
+            if (value < 1 << (size - 1)) {
+                value -= (1 << size) - 1;
+            }
+            return value;
+        }
+
+        private void skipBits(int count) {
+            if (count > mBitCount) {
+                fillBits();
+            }
+            mBits <<= count;
+            mBitCount -= count;
+        }
+
+        private int readShort() throws IOException {
+            if (mPosition + 2 > mData.length) {
+                throw new EOFException("Truncated jpeg");
+            }
+            int value = ((mData[mPosition] & 0xFF) << 8) | (mData[mPosition + 1] & 0xFF);
+            mPosition += 2;
+            return value;
+        }
+
+        /**
+         * 每个块的DC值转换成一个像素，子采样的分量按比例取对应的块
+         */
+        int[] toArgb(int width, int height) {
+            int[] pixels = new int[width * height];
+            int count = mComponents.length;
+            boolean rgb = count == 3 && (mAdobeTransform == 0
+                    || (mComponents[0].mId == 'R' && mComponents[1].mId == 'G'
+                    && mComponents[2].mId == 'B'));
+            int[] samples = new int[count];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    for (int c = 0; c < count; c++) {
+                        Component component = mComponents[c];
+                        int bx = x * component.mH / mMaxH;
+                        int by = y * component.mV / mMaxV;
+                        // DC系数除以8是块的平均值，再加上128的电平偏移
+                        int value = (component.mBlocks[by * component.mStride + bx] + 1028) >> 3;
+                        samples[c] = value < 0 ? 0 : (value > 255 ? 255 : value);
+                    }
+                    int r;
+                    int g;
+                    int b;
+                    if (count == 1) {
+                        r = samples[0];
+                        g = r;
+                        b = r;
+                    } else if (rgb) {
+                        r = samples[0];
+                        g = samples[1];
+                        b = samples[2];
+                    } else {
+                        int luma = samples[0] << 16;
+                        int cb = samples[1] - 128;
+                        int cr = samples[2] - 128;
+                        // JFIF的YCbCr转RGB，系数放大65536倍
+                        r = clamp((luma + 91881 * cr + 32768) >> 16);
+                        g = clamp((luma - 22554 * cb - 46802 * cr + 32768) >> 16);
+                        b = clamp((luma + 116130 * cb + 32768) >> 16);
+                    }
+                    pixels[y * width + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+            return pixels;
+        }
+
+        private static int clamp(int value) {
+            return value < 0 ? 0 : (value > 255 ? 255 : value);
+        }
+    }
+}
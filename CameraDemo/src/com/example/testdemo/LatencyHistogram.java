@@ -0,0 +1,126 @@
+package com.example.testdemo;
+
+/**
+ * 记录延迟的分布。每个2的幂的范围再平分成8个桶，任何延迟的相对误差都不超过1/8，
+ * 桶的数量固定，记录时不分配内存。最小值、最大值与平均值是精确的，百分位数返回所在桶的上界。
+ * 可以在多个线程中同时记录。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 超过这个值的延迟都记在最后一个桶中
+    public static final long MAX_TRACKABLE = 60 * 1000;
+
+    private final long[] mCounts = new long[bucketIndex(MAX_TRACKABLE) + 1];
+    private long mCount;
+    private long mTotal;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+
+    /**
+     * 记录一次延迟
+     * 
+     * @param latency 延迟，负数按0记录
+     */
+    public synchronized void record(long latency) {
+        if (latency < 0) {
+            latency = 0;
+        }
+        mCounts[bucketIndex(Math.min(latency, MAX_TRACKABLE))]++;
+        mCount++;
+        mTotal += latency;
+        mMin = Math.min(mMin, latency);
+        mMax = Math.max(mMax, latency);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return 没有记录时为0
+     */
+    public synchronized long getMin() {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @return 没有记录时为0
+     */
+    public synchronized long getMean() {
+        return mCount == 0 ? 0 : mTotal / mCount;
+    }
+
+    /**
+     * 取得百分位数
+     * 
+     * @param percentile 0到100之间
+     * @return 至少有percentile%的记录不超过这个值，没有记录时为0
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        }
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                if (i == mCounts.length - 1) {
+                    // 最后一个桶没有上界
+                    return mMax;
+                }
+                return Math.max(mMin, Math.min(mMax, bucketUpperBound(i)));
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * 清除所有的记录
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mTotal = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "count=" + mCount + " min=" + getMin() + " mean=" + getMean() + " p50="
+                + getPercentile(50) + " p90=" + getPercentile(90) + " p99=" + getPercentile(99)
+                + " max=" + mMax;
+    }
+
+    /**
+     * 小于SUB_BUCKETS*2的值每个值一个桶，之后每个2的幂的范围分成SUB_BUCKETS个桶
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS * 2) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
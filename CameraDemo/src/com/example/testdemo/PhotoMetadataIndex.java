@@ -0,0 +1,414 @@
+package com.example.testdemo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 拍照目录的照片信息索引，保存每张照片的方向、尺寸、gps与拍摄时间，
+ * 使用者不需要每次都重新解析照片的exif。
+ * 索引以二进制文件保存在照片目录中，以文件名、修改时间与大小判断照片是否变化，
+ * 更新时只解析新增或者变化的照片，照片较多时使用多个线程同时解析。
+ */
+public class PhotoMetadataIndex {
+
+    public static final String INDEX_FILE_NAME = ".photo_index";
+    private static final int MAGIC = 0x504D4958;
+    private static final int VERSION = 1;
+    // 需要解析的照片少于这个数量时在调用线程中直接解析
+    private static final int MIN_PARALLEL_FILES = 16;
+    private static final String EXIF_DATE_FORMAT = "yyyy:MM:dd HH:mm:ss";
+
+    private static final ThreadLocal<SimpleDateFormat> sDateFormat =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat(EXIF_DATE_FORMAT, Locale.US);
+                }
+            };
+
+    private static final FileFilter JPEG_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            String name = file.getName().toLowerCase(Locale.US);
+            return file.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg"));
+        }
+    };
+
+    private final File mDirectory;
+    private final File mIndexFile;
+    private final int mThreadCount;
+    // key为文件名
+    private Map<String, Entry> mEntries;
+
+    /**
+     * @param directory 照片目录
+     */
+    public PhotoMetadataIndex(File directory) {
+        this(directory, new File(directory, INDEX_FILE_NAME),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param directory 照片目录
+     * @param indexFile 索引文件
+     * @param threadCount 解析照片的线程数
+     */
+    public PhotoMetadataIndex(File directory, File indexFile, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mDirectory = directory;
+        mIndexFile = indexFile;
+        mThreadCount = threadCount;
+    }
+
+    /**
+     * 扫描照片目录，解析新增与变化的照片，去掉已经删除的照片，有变化时保存索引文件
+     * 
+     * @return 重新解析的照片数量
+     * @throws IOException 保存索引文件失败
+     */
+    public synchronized int update() throws IOException {
+        if (mEntries == null) {
+            mEntries = load(mIndexFile);
+        }
+        File[] files = mDirectory.listFiles(JPEG_FILTER);
+        if (files == null) {
+            files = new File[0];
+        }
+        Map<String, Entry> entries = new HashMap<String, Entry>(files.length * 2);
+        List<File> changed = new ArrayList<File>();
+        for (File file : files) {
+            Entry entry = mEntries.get(file.getName());
+            if (entry != null && entry.mLastModified == file.lastModified()
+                    && entry.mLength == file.length()) {
+                entries.put(entry.mName, entry);
+            } else {
+                changed.add(file);
+            }
+        }
+        for (Entry entry : parse(changed)) {
+            entries.put(entry.mName, entry);
+        }
+        boolean modified = !changed.isEmpty() || entries.size() != mEntries.size();
+        mEntries = entries;
+        if (modified) {
+            save();
+        }
+        return changed.size();
+    }
+
+    /**
+     * 重新解析一张照片并更新到索引中，不会保存索引文件
+     * 
+     * @param file 照片目录中的照片
+     * @return 照片不存在时返回null
+     */
+    public synchronized Entry refresh(File file) {
+        if (mEntries == null) {
+            mEntries = load(mIndexFile);
+        }
+        if (!file.isFile()) {
+            mEntries.remove(file.getName());
+            return null;
+        }
+        Entry entry = parse(file);
+        mEntries.put(entry.mName, entry);
+        return entry;
+    }
+
+    /**
+     * 获取一张照片的信息，需要先调用update
+     * 
+     * @param file 照片
+     * @return 索引中没有这张照片或者照片已经改变时返回null
+     */
+    public synchronized Entry get(File file) {
+        Entry entry = mEntries == null ? null : mEntries.get(file.getName());
+        if (entry == null || entry.mLastModified != file.lastModified()
+                || entry.mLength != file.length()) {
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized Collection<Entry> getEntries() {
+        if (mEntries == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Entry>(mEntries.values());
+    }
+
+    /**
+     * 保存索引文件，先写入临时文件再重命名
+     * 
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        if (mEntries == null) {
+            return;
+        }
+        File temp = new File(mIndexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mEntries.size());
+            for (Entry entry : mEntries.values()) {
+                entry.write(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(mIndexFile)) {
+            temp.delete();
+            throw new IOException("Can not rename " + temp + " to " + mIndexFile);
+        }
+    }
+
+    private static Map<String, Entry> load(File indexFile) {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        } catch (FileNotFoundException e) {
+            return entries;
+        }
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = Entry.read(in);
+                entries.put(entry.mName, entry);
+            }
+        } catch (IOException e) {
+            // 索引文件损坏，全部重新解析
+            entries.clear();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return entries;
+    }
+
+    private List<Entry> parse(List<File> files) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>(files.size());
+        if (mThreadCount == 1 || files.size() < MIN_PARALLEL_FILES) {
+            for (File file : files) {
+                entries.add(parse(file));
+            }
+            return entries;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        try {
+            int chunk = (files.size() + mThreadCount - 1) / mThreadCount;
+            List<Future<List<Entry>>> futures = new ArrayList<Future<List<Entry>>>();
+            for (int start = 0; start < files.size(); start += chunk) {
+                final List<File> part = files.subList(start,
+                        Math.min(files.size(), start + chunk));
+                futures.add(executor.submit(new Callable<List<Entry>>() {
+                    @Override
+                    public List<Entry> call() {
+                        List<Entry> result = new ArrayList<Entry>(part.size());
+                        for (File file : part) {
+                            result.add(parse(file));
+                        }
+                        return result;
+                    }
+                }));
+            }
+            for (Future<List<Entry>> future : futures) {
+                entries.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing " + mDirectory);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse " + mDirectory, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return entries;
+    }
+
+    /**
+     * 解析一张照片，读取失败或者格式错误的照片也会记录下来，没有元数据，避免每次更新都重新解析
+     */
+    private static Entry parse(File file) {
+        Entry entry = new Entry(file.getName(), file.lastModified(), file.length());
+        try {
+            parseMetadata(file, entry);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Entry(entry.mName, entry.mLastModified, entry.mLength);
+        } catch (RuntimeException e) {
+            // exif损坏，例如entry的偏移超出范围，不影响其他照片
+            e.printStackTrace();
+            return new Entry(entry.mName, entry.mLastModified, entry.mLength);
+        }
+        return entry;
+    }
+
+    private static void parseMetadata(File file, Entry entry) throws IOException {
+        int[] size = new int[2];
+        ExifData exif = ExifReader.read(file, size);
+        entry.mWidth = size[0];
+        entry.mHeight = size[1];
+        if (exif != null) {
+            entry.mOrientation = exif.getOrientation();
+            double[] latLong = exif.getLatLong();
+            if (latLong != null) {
+                entry.mHasLocation = true;
+                entry.mLatitude = latLong[0];
+                entry.mLongitude = latLong[1];
+            }
+            String dateTime = exif.getString(ExifData.IFD_EXIF, ExifData.TAG_DATE_TIME_ORIGINAL);
+            if (dateTime == null) {
+                dateTime = exif.getString(ExifData.IFD_0, ExifData.TAG_DATE_TIME);
+            }
+            entry.mCaptureTime = parseDateTime(dateTime);
+        }
+    }
+
+    private static long parseDateTime(String dateTime) {
+        if (dateTime == null) {
+            return -1;
+        }
+        try {
+            return sDateFormat.get().parse(dateTime).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 一张照片的信息
+     */
+    public static class Entry {
+        private final String mName;
+        private final long mLastModified;
+        private final long mLength;
+        private int mOrientation;
+        private int mWidth;
+        private int mHeight;
+        private boolean mHasLocation;
+        private double mLatitude;
+        private double mLongitude;
+        private long mCaptureTime = -1;
+
+        Entry(String name, long lastModified, long length) {
+            mName = name;
+            mLastModified = lastModified;
+            mLength = length;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getLastModified() {
+            return mLastModified;
+        }
+
+        public long getLength() {
+            return mLength;
+        }
+
+        /**
+         * @return 照片需要顺时针旋转的角度
+         */
+        public int getOrientation() {
+            return mOrientation;
+        }
+
+        /**
+         * @return 未旋转的宽度，未知时为0
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * @return 未旋转的高度，未知时为0
+         */
+        public int getHeight() {
+            return mHeight;
+        }
+
+        public boolean hasLocation() {
+            return mHasLocation;
+        }
+
+        public double getLatitude() {
+            return mLatitude;
+        }
+
+        public double getLongitude() {
+            return mLongitude;
+        }
+
+        /**
+         * @return 拍摄时间的毫秒数，未知时为-1
+         */
+        public long getCaptureTime() {
+            return mCaptureTime;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(mName);
+            out.writeLong(mLastModified);
+            out.writeLong(mLength);
+            out.writeShort(mOrientation);
+            out.writeInt(mWidth);
+            out.writeInt(mHeight);
+            out.writeLong(mCaptureTime);
+            out.writeBoolean(mHasLocation);
+            if (mHasLocation) {
+                out.writeDouble(mLatitude);
+                out.writeDouble(mLongitude);
+            }
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong());
+            entry.mOrientation = in.readShort();
+            entry.mWidth = in.readInt();
+            entry.mHeight = in.readInt();
+            entry.mCaptureTime = in.readLong();
+            entry.mHasLocation = in.readBoolean();
+            if (entry.mHasLocation) {
+                entry.mLatitude = in.readDouble();
+                entry.mLongitude = in.readDouble();
+            }
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.testdemo;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 预览帧数据的缓存池。池中的byte[]在创建时一次性分配，之后只在借出与归还之间循环，
+ * 预览过程中不会再产生新的数组。同时统计已经分发与被丢弃的预览帧数量。
+ */
+public class PreviewBufferPool {
+
+    private final int mBufferSize;
+    private final int mCapacity;
+    private final ArrayDeque<byte[]> mFree;
+    // 池中所有的数组，value为true表示已经借出
+    private final Map<byte[], Boolean> mBuffers;
+    private long mDeliveredFrames;
+    private long mDroppedFrames;
+
+    /**
+     * @param capacity 缓存数组的数量
+     * @param bufferSize 每个数组的字节数
+     */
+    public PreviewBufferPool(int capacity, int bufferSize) {
+        if (capacity < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException("capacity " + capacity + " bufferSize "
+                    + bufferSize);
+        }
+        mCapacity = capacity;
+        mBufferSize = bufferSize;
+        mFree = new ArrayDeque<byte[]>(capacity);
+        mBuffers = new IdentityHashMap<byte[], Boolean>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            byte[] buffer = new byte[bufferSize];
+            mFree.add(buffer);
+            mBuffers.put(buffer, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * 根据预览尺寸与像素格式的位数计算一帧数据的字节数
+     * 
+     * @param width 预览宽度
+     * @param height 预览高度
+     * @param bitsPerPixel 每个像素的位数，NV21为12
+     * @return
+     */
+    public static int computeFrameSize(int width, int height, int bitsPerPixel) {
+        if (width <= 0 || height <= 0 || bitsPerPixel <= 0) {
+            throw new IllegalArgumentException("width " + width + " height " + height
+                    + " bitsPerPixel " + bitsPerPixel);
+        }
+        long bits = (long) width * height * bitsPerPixel;
+        return (int) ((bits + 7) / 8);
+    }
+
+    /**
+     * 借出一个数组
+     * 
+     * @return 没有空闲的数组时返回null
+     */
+    public synchronized byte[] lease() {
+        byte[] buffer = mFree.poll();
+        if (buffer != null) {
+            mBuffers.put(buffer, Boolean.TRUE);
+        }
+        return buffer;
+    }
+
+    /**
+     * 归还借出的数组
+     * 
+     * @param buffer 从本池借出的数组
+     */
+    public synchronized void recycle(byte[] buffer) {
+        Boolean leased = mBuffers.get(buffer);
+        if (leased == null) {
+            throw new IllegalArgumentException("buffer does not belong to this pool");
+        }
+        if (!leased.booleanValue()) {
+            throw new IllegalStateException("buffer already recycled");
+        }
+        mBuffers.put(buffer, Boolean.FALSE);
+        mFree.add(buffer);
+    }
+
+    /**
+     * 数组是否是本池创建的
+     * 
+     * @param buffer
+     * @return
+     */
+    public synchronized boolean owns(byte[] buffer) {
+        return buffer != null && mBuffers.containsKey(buffer);
+    }
+
+    /**
+     * 记录一帧已经分发给使用者
+     */
+    public synchronized void onFrameDelivered() {
+        mDeliveredFrames++;
+    }
+
+    /**
+     * 记录一帧因为使用者来不及处理而被丢弃
+     */
+    public synchronized void onFrameDropped() {
+        mDroppedFrames++;
+    }
+
+    public synchronized long getDeliveredFrames() {
+        return mDeliveredFrames;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    public synchronized void resetMetrics() {
+        mDeliveredFrames = 0;
+        mDroppedFrames = 0;
+    }
+
+    public synchronized int getFreeCount() {
+        return mFree.size();
+    }
+
+    public synchronized int getLeasedCount() {
+        return mCapacity - mFree.size();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.testdemo;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.hardware.Camera.PreviewCallback;
+import android.util.Log;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * 预览帧数据源，使用setPreviewCallbackWithBuffer与固定数量的缓存数组接收预览数据，
+ * 避免setPreviewCallback每一帧都分配新数组。使用者处理完一帧以后需要调用release归还，
+ * 使用者占用的帧过多时新到的帧会直接还给相机并记为丢帧。
+ * 数组在相机与使用者手中时从缓存池借出，不再使用时归还缓存池，再从缓存池中取出交给相机。
+ */
+public class PreviewFrameSource implements PreviewCallback {
+
+    /**
+     * 预览帧回调
+     */
+    public interface OnFrameListener {
+        /**
+         * 收到一帧预览数据，处理完成以后必须调用 {@link PreviewFrameSource#release(byte[])}
+         * 
+         * @param data 预览数据
+         * @param width 预览宽度
+         * @param height 预览高度
+         * @param format 像素格式 {@link ImageFormat}
+         */
+        void onPreviewFrame(byte[] data, int width, int height, int format);
+    }
+
+    /**
+     * 每次绑定相机以后收到第一帧的回调，在相机的回调线程中执行
+     */
+    public interface OnFirstFrameListener {
+        void onFirstFrame();
+    }
+
+    private static final String TAG = "PreviewFrameSource";
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+
+    private final int mBufferCount;
+    private Camera mCamera;
+    private PreviewBufferPool mPool;
+    private OnFrameListener mListener;
+    private OnFirstFrameListener mFirstFrameListener;
+    private boolean mFirstFrameReceived;
+    private int mWidth;
+    private int mHeight;
+    private int mFormat;
+    // 使用者还没有归还的帧
+    private final Set<byte[]> mHeldFrames =
+            Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+
+    public PreviewFrameSource() {
+        this(DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * @param bufferCount 缓存数组的数量，至少为2，保证使用者处理数据时相机仍有缓存可用
+     */
+    public PreviewFrameSource(int bufferCount) {
+        if (bufferCount < 2) {
+            throw new IllegalArgumentException("bufferCount must be at least 2");
+        }
+        mBufferCount = bufferCount;
+    }
+
+    /**
+     * 计算一帧预览数据的字节数
+     * 
+     * @param width 预览宽度
+     * @param height 预览高度
+     * @param format 像素格式
+     * @return
+     * @throws IllegalArgumentException 不是预览支持的像素格式
+     */
+    public static int getFrameSize(int width, int height, int format) {
+        if (format == ImageFormat.YV12) {
+            // YV12每行按16字节对齐，见Camera.Parameters.setPreviewFormat的说明
+            int yStride = (width + 15) / 16 * 16;
+            int uvStride = (yStride / 2 + 15) / 16 * 16;
+            return yStride * height + uvStride * height / 2 * 2;
+        }
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(format);
+        if (bitsPerPixel <= 0) {
+            // 例如JPEG等压缩格式，getBitsPerPixel返回-1
+            throw new IllegalArgumentException("Unsupported preview format " + format);
+        }
+        return PreviewBufferPool.computeFrameSize(width, height, bitsPerPixel);
+    }
+
+    /**
+     * 绑定相机并把缓存数组交给相机，需要在预览尺寸设置到相机以后调用
+     * 
+     * @param camera 相机
+     * @param width 预览宽度
+     * @param height 预览高度
+     * @param format 像素格式
+     * @throws IllegalArgumentException 不是预览支持的像素格式，这时不会绑定相机
+     */
+    public synchronized void attach(Camera camera, int width, int height, int format) {
+        int frameSize = getFrameSize(width, height, format);
+        detach();
+        mCamera = camera;
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+        mHeldFrames.clear();
+        mFirstFrameReceived = false;
+        mPool = new PreviewBufferPool(mBufferCount, frameSize);
+        // 设置回调时相机会清空之前的缓存队列，所以先设置回调再添加缓存
+        camera.setPreviewCallbackWithBuffer(this);
+        fillCamera();
+        Log.i(TAG, "attach " + width + "x" + height + " format " + format + " buffer "
+                + mPool.getBufferSize());
+    }
+
+    /**
+     * 解除与相机的绑定，之后归还的帧会被忽略
+     */
+    public synchronized void detach() {
+        if (mCamera != null) {
+            mCamera.setPreviewCallbackWithBuffer(null);
+            logMetrics();
+        }
+        mCamera = null;
+        mPool = null;
+        mHeldFrames.clear();
+    }
+
+    public synchronized void setOnFrameListener(OnFrameListener listener) {
+        mListener = listener;
+    }
+
+    public synchronized void setOnFirstFrameListener(OnFirstFrameListener listener) {
+        mFirstFrameListener = listener;
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        OnFrameListener listener;
+        OnFirstFrameListener firstFrameListener = null;
+        synchronized (this) {
+            if (data == null || camera != mCamera || !mPool.owns(data)) {
+                return;
+            }
+            if (!mFirstFrameReceived) {
+                mFirstFrameReceived = true;
+                firstFrameListener = mFirstFrameListener;
+            }
+            listener = mListener;
+            if (listener == null) {
+                recycle(data);
+            } else if (mHeldFrames.size() >= mBufferCount - 1) {
+                // 使用者手里的帧太多，相机已经没有缓存可用，直接丢弃这一帧
+                mPool.onFrameDropped();
+                recycle(data);
+                listener = null;
+            } else {
+                mHeldFrames.add(data);
+                mPool.onFrameDelivered();
+            }
+        }
+        if (firstFrameListener != null) {
+            firstFrameListener.onFirstFrame();
+        }
+        if (listener != null) {
+            listener.onPreviewFrame(data, mWidth, mHeight, mFormat);
+        }
+    }
+
+    /**
+     * 归还一帧数据，可以在任意线程调用
+     * 
+     * @param data 回调中收到的数据
+     */
+    public synchronized void release(byte[] data) {
+        if (mCamera == null || mPool == null || !mPool.owns(data)) {
+            // 已经解除绑定或者预览尺寸已经改变，丢弃旧的数组
+            return;
+        }
+        if (!mHeldFrames.remove(data)) {
+            throw new IllegalStateException("frame already released");
+        }
+        recycle(data);
+    }
+
+    public synchronized long getDeliveredFrames() {
+        return mPool == null ? 0 : mPool.getDeliveredFrames();
+    }
+
+    public synchronized long getDroppedFrames() {
+        return mPool == null ? 0 : mPool.getDroppedFrames();
+    }
+
+    /**
+     * 把数组还给缓存池，再交给相机
+     */
+    private void recycle(byte[] data) {
+        mPool.recycle(data);
+        fillCamera();
+    }
+
+    /**
+     * 把缓存池中所有空闲的数组借出交给相机
+     */
+    private void fillCamera() {
+        byte[] buffer;
+        while ((buffer = mPool.lease()) != null) {
+            mCamera.addCallbackBuffer(buffer);
+        }
+    }
+
+    private void logMetrics() {
+        if (mPool != null) {
+            Log.i(TAG, "delivered " + mPool.getDeliveredFrames() + " dropped "
+                    + mPool.getDroppedFrames());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.testdemo;
+
+/**
+ * 图片缩放比例与预览尺寸的计算，参数只使用宽高等整数，
+ * CameraUtil与CameraPreview中对应的方法都转调这里。
+ */
+public class SizeUtil {
+
+    private SizeUtil() {
+    }
+
+    /**
+     * 根据最小边长与最大像素数计算BitmapFactory的缩放比例，结果为2的幂或者8的倍数
+     * 
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @param minSideLength 缩放后的最小边长，小于0表示不限制
+     * @param maxNumOfPixels 缩放后的最大像素数，小于0表示不限制
+     * @return
+     */
+    public static int computeSampleSize(int width, int height, int minSideLength,
+            int maxNumOfPixels) {
+        int initialSize = computeInitialSampleSize(width, height, minSideLength,
+                maxNumOfPixels);
+
+        int roundedSize;
+        if (initialSize <= 8) {
+            roundedSize = 1;
+            while (roundedSize < initialSize) {
+                roundedSize <<= 1;
+            }
+        } else {
+            roundedSize = (initialSize + 7) / 8 * 8;
+        }
+
+        return roundedSize;
+    }
+
+    private static int computeInitialSampleSize(int width, int height, int minSideLength,
+            int maxNumOfPixels) {
+        double w = width;
+        double h = height;
+
+        int lowerBound = (maxNumOfPixels < 0) ? 1 : (int) Math.ceil(Math.sqrt(w
+                * h / maxNumOfPixels));
+        int upperBound = (minSideLength < 0) ? 128 : (int) Math.min(
+                Math.floor(w / minSideLength), Math.floor(h / minSideLength));
+
+        if (upperBound < lowerBound) {
+            // return the larger one when there is no overlapping zone.
+            return lowerBound;
+        }
+
+        if (maxNumOfPixels < 0 && minSideLength < 0) {
+            return 1;
+        } else if (minSideLength < 0) {
+            return lowerBound;
+        } else {
+            return upperBound;
+        }
+    }
+
+    /**
+     * 计算缩放到要求尺寸附近的缩放比例
+     * 
+     * @param width 图片宽度
+     * @param height 图片高度
+     * @param reqWidth 要求的宽度
+     * @param reqHeight 要求的高度
+     * @return
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth,
+            int reqHeight) {
+        int inSampleSize = 1;
+
+        if (height > reqHeight || width > reqWidth) {
+
+            // 计算比率
+            final int heightRatio = Math.round((float) height
+                    / (float) reqHeight);
+            final int widthRatio = Math.round((float) width / (float) reqWidth);
+
+            // 选择最小的缩放比例，
+            inSampleSize = heightRatio < widthRatio ? heightRatio : widthRatio;
+
+            final float totalPixels = width * height;
+
+            final float totalReqPixelsCap = reqWidth * reqHeight * 2;
+
+            while (totalPixels / (inSampleSize * inSampleSize) > totalReqPixelsCap) {
+                inSampleSize++;
+            }
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * 查找像素数最接近目标的预览尺寸
+     * 
+     * @param widths 支持的宽度
+     * @param heights 支持的高度，与widths一一对应
+     * @param targetPixels 目标像素数，与目标相差超过这个值的尺寸不会被选中
+     * @param need4To3 是否需要4：3
+     * @param needSmaller 是否不能超过目标像素数
+     * @return 选中尺寸的下标，没有合适的尺寸时返回-1
+     */
+    public static int findBestPreviewSize(int[] widths, int[] heights, int targetPixels,
+            boolean need4To3, boolean needSmaller) {
+        int pixelsDiff = targetPixels;
+        int best = -1;
+        for (int i = 0; i < widths.length; i++) {
+            int h = heights[i];
+            int w = widths[i];
+            int d = targetPixels - h * w;
+            if (needSmaller && d < 0) {
+                continue;
+            }
+            if (need4To3 && (h * 4 != w * 3)) {
+                continue;
+            }
+            d = Math.abs(d);
+            if (d < pixelsDiff) {
+                best = i;
+                pixelsDiff = d;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.testdemo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 记录相机启动过程中各个阶段的时间，例如打开相机、读取参数与收到第一帧。
+ * 每个阶段从 {@link #start()} 开始只记录第一次，可以在多个线程中记录。
+ */
+public class StartupTimer {
+
+    public static final String MARK_OPEN = "open";
+    public static final String MARK_PARAMETERS = "parameters";
+    public static final String MARK_FIRST_FRAME = "first-frame";
+
+    // 阶段名与从开始经过的毫秒数，按记录的顺序
+    private final Map<String, Long> mMarks = new LinkedHashMap<String, Long>();
+    private long mStartNanos;
+    private boolean mStarted;
+
+    /**
+     * 开始计时，清除之前的记录
+     */
+    public synchronized void start() {
+        mMarks.clear();
+        mStartNanos = System.nanoTime();
+        mStarted = true;
+    }
+
+    /**
+     * 记录一个阶段，同一个阶段只记录第一次
+     * 
+     * @param name 阶段名
+     * @return 从开始经过的毫秒数，没有开始或者已经记录过时返回-1
+     */
+    public synchronized long mark(String name) {
+        if (!mStarted || mMarks.containsKey(name)) {
+            return -1;
+        }
+        long elapsed = (System.nanoTime() - mStartNanos) / 1000000;
+        mMarks.put(name, elapsed);
+        return elapsed;
+    }
+
+    /**
+     * @param name 阶段名
+     * @return 从开始经过的毫秒数，没有记录时返回-1
+     */
+    public synchronized long getMark(String name) {
+        Long elapsed = mMarks.get(name);
+        return elapsed == null ? -1 : elapsed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : mMarks.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(entry.getKey()).append('=').append(entry.getValue()).append("ms");
+        }
+        return builder.toString();
+    }
+}
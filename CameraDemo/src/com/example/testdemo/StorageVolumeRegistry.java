@@ -0,0 +1,309 @@
+package com.example.testdemo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 读取 /proc/self/mountinfo 得到已经挂载的存储卷，代替执行mount命令再解析输出。
+ * 文件内容读入一个重复使用的缓存，按字节逐行扫描，扫描过程中不分配对象，只为每个挂载点创建结果。
+ * 内容与上次读取的相同时直接返回上次的结果，不再解析。
+ * 空间大小使用File.getTotalSpace()与File.getUsableSpace()读取，与StatFs相同都是statfs系统调用。
+ * 可以用任意格式相同的文件创建，方便在jvm中使用固定的内容测试。
+ */
+public class StorageVolumeRegistry {
+
+    /**
+     * 一个挂载点
+     */
+    public static class Volume {
+        private final File mPath;
+        private final String mFsType;
+        private final String mSource;
+        private final boolean mReadOnly;
+
+        Volume(File path, String fsType, String source, boolean readOnly) {
+            mPath = path;
+            mFsType = fsType;
+            mSource = source;
+            mReadOnly = readOnly;
+        }
+
+        /**
+         * @return 挂载点
+         */
+        public File getPath() {
+            return mPath;
+        }
+
+        /**
+         * @return 文件系统类型，例如"vfat"、"fuse"、"ext4"
+         */
+        public String getFsType() {
+            return mFsType;
+        }
+
+        /**
+         * @return 挂载的设备，例如"/dev/block/vold/179:65"
+         */
+        public String getSource() {
+            return mSource;
+        }
+
+        public boolean isReadOnly() {
+            return mReadOnly;
+        }
+
+        /**
+         * @return 总字节数，不能访问时为0
+         */
+        public long getTotalSpace() {
+            return mPath.getTotalSpace();
+        }
+
+        /**
+         * @return 当前进程可以使用的字节数，不能访问时为0
+         */
+        public long getUsableSpace() {
+            return mPath.getUsableSpace();
+        }
+
+        /**
+         * @return 是否是保存用户文件的存储，与原来解析mount输出时的判断相同
+         */
+        public boolean isStorage() {
+            if (mFsType.indexOf("fat") < 0 && !mFsType.startsWith("fuse")
+                    && !mFsType.equals("sdcardfs")) {
+                return false;
+            }
+            String path = mPath.getPath();
+            // 加密应用使用的挂载点
+            return path.indexOf("secure") < 0 && path.indexOf("asec") < 0
+                    && mSource.indexOf("secure") < 0 && mSource.indexOf("asec") < 0;
+        }
+
+        @Override
+        public String toString() {
+            return mPath + " " + mFsType + " " + mSource;
+        }
+    }
+
+    public static final String MOUNT_INFO = "/proc/self/mountinfo";
+
+    private static StorageVolumeRegistry sDefault;
+
+    private final File mMountInfo;
+    // 读取文件使用的缓存，只在内容变长时扩大
+    private byte[] mBuffer = new byte[8 * 1024];
+    // 上次解析的内容
+    private byte[] mLast = new byte[0];
+    private byte[] mPathBuffer = new byte[256];
+    private List<Volume> mVolumes = Collections.emptyList();
+
+    public static synchronized StorageVolumeRegistry getDefault() {
+        if (sDefault == null) {
+            sDefault = new StorageVolumeRegistry(new File(MOUNT_INFO));
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param mountInfo mountinfo格式的文件
+     */
+    public StorageVolumeRegistry(File mountInfo) {
+        mMountInfo = mountInfo;
+    }
+
+    /**
+     * 全部挂载点，按mountinfo中的顺序
+     * 
+     * @return 不能修改的列表
+     * @throws IOException 不能读取mountinfo
+     */
+    public synchronized List<Volume> getVolumes() throws IOException {
+        int length = read();
+        if (length == mLast.length && equals(mBuffer, mLast, length)) {
+            return mVolumes;
+        }
+        mVolumes = Collections.unmodifiableList(parse(mBuffer, length));
+        mLast = Arrays.copyOf(mBuffer, length);
+        return mVolumes;
+    }
+
+    /**
+     * 保存用户文件的存储卷，也就是sd卡与内置存储，见 {@link Volume#isStorage()}
+     * 
+     * @return
+     * @throws IOException 不能读取mountinfo
+     */
+    public List<Volume> getStorageVolumes() throws IOException {
+        List<Volume> volumes = new ArrayList<Volume>();
+        for (Volume volume : getVolumes()) {
+            if (volume.isStorage()) {
+                volumes.add(volume);
+            }
+        }
+        return volumes;
+    }
+
+    /**
+     * 总空间最大的存储卷
+     * 
+     * @return 没有存储卷时返回null
+     * @throws IOException 不能读取mountinfo
+     */
+    public Volume getBiggestStorageVolume() throws IOException {
+        Volume biggest = null;
+        long biggestSpace = 0;
+        for (Volume volume : getStorageVolumes()) {
+            long space = volume.getTotalSpace();
+            if (space > biggestSpace) {
+                biggestSpace = space;
+                biggest = volume;
+            }
+        }
+        return biggest;
+    }
+
+    /**
+     * 读取整个文件到mBuffer，proc中的文件长度为0，只能读到结束为止
+     */
+    private int read() throws IOException {
+        FileInputStream in = new FileInputStream(mMountInfo);
+        try {
+            int length = 0;
+            int count;
+            while ((count = in.read(mBuffer, length, mBuffer.length - length)) >= 0) {
+                length += count;
+                if (length == mBuffer.length) {
+                    mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+                }
+            }
+            return length;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean equals(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 每行的格式为
+     * "36 35 98:0 /mnt1 /mnt2 rw,noatime master:1 - ext3 /dev/root rw,errors=continue"，
+     * 第5项是挂载点，第6项是挂载参数，"-"之后依次是文件系统类型与设备
+     */
+    List<Volume> parse(byte[] data, int length) throws IOException {
+        List<Volume> volumes = new ArrayList<Volume>();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            Volume volume = parseLine(data, lineStart, lineEnd);
+            if (volume != null) {
+                volumes.add(volume);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return volumes;
+    }
+
+    private Volume parseLine(byte[] data, int start, int end) throws IOException {
+        int pathStart = -1;
+        int pathEnd = -1;
+        boolean readOnly = false;
+        int field = 0;
+        int pos = start;
+        while (pos < end) {
+            while (pos < end && data[pos] == ' ') {
+                pos++;
+            }
+            int fieldStart = pos;
+            while (pos < end && data[pos] != ' ') {
+                pos++;
+            }
+            if (fieldStart == pos) {
+                break;
+            }
+            field++;
+            if (field == 5) {
+                pathStart = fieldStart;
+                pathEnd = pos;
+            } else if (field == 6) {
+                readOnly = pos - fieldStart >= 2 && data[fieldStart] == 'r'
+                        && data[fieldStart + 1] == 'o'
+                        && (pos - fieldStart == 2 || data[fieldStart + 2] == ',');
+            } else if (field > 6 && pos - fieldStart == 1 && data[fieldStart] == '-') {
+                String fsType = nextField(data, pos, end);
+                if (fsType == null || pathStart < 0) {
+                    return null;
+                }
+                pos = skipField(data, pos, end);
+                String source = nextField(data, pos, end);
+                return new Volume(new File(unescape(data, pathStart, pathEnd)), fsType,
+                        source == null ? "" : source, readOnly);
+            }
+        }
+        // 格式不对的行
+        return null;
+    }
+
+    private static int skipField(byte[] data, int pos, int end) {
+        while (pos < end && data[pos] == ' ') {
+            pos++;
+        }
+        while (pos < end && data[pos] != ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static String nextField(byte[] data, int pos, int end)
+            throws UnsupportedEncodingException {
+        while (pos < end && data[pos] == ' ') {
+            pos++;
+        }
+        int fieldStart = pos;
+        while (pos < end && data[pos] != ' ') {
+            pos++;
+        }
+        return fieldStart == pos ? null : new String(data, fieldStart, pos - fieldStart, "UTF-8");
+    }
+
+    /**
+     * 挂载点中的空格等字符写成"\040"形式的八进制转义
+     */
+    private String unescape(byte[] data, int start, int end) throws UnsupportedEncodingException {
+        if (mPathBuffer.length < end - start) {
+            mPathBuffer = new byte[end - start];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '\\' && i + 3 < end && isOctal(data[i + 1]) && isOctal(data[i + 2])
+                    && isOctal(data[i + 3])) {
+                b = (byte) ((data[i + 1] - '0') * 64 + (data[i + 2] - '0') * 8 + data[i + 3] - '0');
+                i += 3;
+            }
+            mPathBuffer[length++] = b;
+        }
+        return new String(mPathBuffer, 0, length, "UTF-8");
+    }
+
+    private static boolean isOctal(byte b) {
+        return b >= '0' && b <= '7';
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.testdemo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 拍照以后生成预览图。在后台线程中按采样率解码照片，再一次性旋转并缩放到目标尺寸，
+ * 不再像CameraUtil.rotate那样先创建一张与解码结果同样大小的旋转图。
+ * 解码使用的bitmap与不再显示的预览图放回缓存池，系统支持时通过inBitmap重复使用，连续拍照时不需要重新分配。
+ * 目标尺寸不超过照片的1/8时先用 {@link JpegThumbnailExtractor} 取exif中足够大的缩略图；
+ * 不做DC解码，BitmapFactory按1/8采样解码时在native中同样跳过了反DCT。
+ * 结果在主线程中回调，解码失败时也会回调。
+ */
+public class ThumbnailService {
+
+    private static final String TAG = "ThumbnailService";
+    private static final int MAX_POOL_SIZE = 3;
+
+    /**
+     * 预览图生成结果的回调，在主线程中执行
+     */
+    public interface OnThumbnailListener {
+        /**
+         * @param thumbnail 预览图，解码失败或者内存不足时为null，不再显示时可以用 {@link #release(Bitmap)} 放回缓存池
+         */
+        void onThumbnailReady(Bitmap thumbnail);
+    }
+
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Bitmap> mPool = new ArrayList<Bitmap>(MAX_POOL_SIZE);
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    public ThumbnailService() {
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ThumbnailService");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 在后台生成预览图
+     * 
+     * @param jpeg 照片数据
+     * @param reqWidth 预览图的最大宽度
+     * @param reqHeight 预览图的最大高度
+     * @param degrees 顺时针旋转的角度
+     * @param listener 结果回调，一定会回调一次
+     */
+    public void request(final byte[] jpeg, final int reqWidth, final int reqHeight,
+            final int degrees, final OnThumbnailListener listener) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap thumbnail = null;
+                try {
+                    thumbnail = decode(jpeg, reqWidth, reqHeight, degrees);
+                } catch (OutOfMemoryError e) {
+                    Log.e(TAG, "Got oom exception ", e);
+                } catch (RuntimeException e) {
+                    // 例如照片数据损坏或者bitmap已经被回收，使用者同样收到null
+                    Log.e(TAG, "Can not decode thumbnail", e);
+                }
+                final Bitmap result = thumbnail;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onThumbnailReady(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 预览图不再显示时放回缓存池，之后不能再使用这个bitmap
+     * 
+     * @param bitmap
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        synchronized (mPool) {
+            if (ApiHelper.HAS_REUSING_BITMAP_IN_BITMAP_FACTORY && bitmap.isMutable()
+                    && mPool.size() < MAX_POOL_SIZE) {
+                mPool.add(bitmap);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /**
+     * 不再接收新的请求，并释放缓存池
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+        synchronized (mPool) {
+            for (Bitmap bitmap : mPool) {
+                bitmap.recycle();
+            }
+            mPool.clear();
+        }
+    }
+
+    private Bitmap decode(byte[] jpeg, int reqWidth, int reqHeight, int degrees) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        // 旋转90度或者270度时解码结果的宽高与目标相反
+        boolean swap = (degrees % 180 + 180) % 180 == 90;
+        options.inSampleSize = SizeUtil.calculateInSampleSize(options.outWidth,
+                options.outHeight, swap ? reqHeight : reqWidth, swap ? reqWidth : reqHeight);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded = null;
+        if (options.inSampleSize >= JpegThumbnailExtractor.SCALE) {
+            decoded = decodeExifThumbnail(jpeg, swap ? reqHeight : reqWidth,
+                    swap ? reqWidth : reqHeight);
+        }
+        if (decoded == null) {
+            decoded = decodeReusing(jpeg, options);
+        }
+        if (decoded == null) {
+            return null;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.setRotate(degrees);
+        RectF bounds = new RectF(0, 0, decoded.getWidth(), decoded.getHeight());
+        matrix.mapRect(bounds);
+        float scale = Math.min(1f, Math.min(reqWidth / bounds.width(),
+                reqHeight / bounds.height()));
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        matrix.postScale(scale, scale);
+        int width = Math.max(1, Math.round(bounds.width() * scale));
+        int height = Math.max(1, Math.round(bounds.height() * scale));
+
+        Bitmap thumbnail = obtain(width, height);
+        Canvas canvas = new Canvas(thumbnail);
+        canvas.drawBitmap(decoded, matrix, mPaint);
+        release(decoded);
+        return thumbnail;
+    }
+
+    /**
+     * 先尝试用缓存池中的bitmap解码，不满足inBitmap的条件时重新分配
+     */
+    private Bitmap decodeReusing(byte[] jpeg, BitmapFactory.Options options) {
+        if (!ApiHelper.HAS_REUSING_BITMAP_IN_BITMAP_FACTORY) {
+            return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        }
+        int sample = options.inSampleSize;
+        int width = (options.outWidth + sample - 1) / sample;
+        int height = (options.outHeight + sample - 1) / sample;
+        options.inMutable = true;
+        options.inBitmap = findReusable(width, height, sample);
+        if (options.inBitmap != null) {
+            try {
+                return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+            } catch (IllegalArgumentException e) {
+                // 不能重复使用时重新分配
+                release(options.inBitmap);
+                options.inBitmap = null;
+            }
+        }
+        return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    }
+
+    /**
+     * 解码exif中足够大的缩略图，没有时返回null，改用BitmapFactory解码
+     */
+    private Bitmap decodeExifThumbnail(byte[] jpeg, int minWidth, int minHeight) {
+        JpegThumbnailExtractor.Thumbnail thumbnail;
+        try {
+            thumbnail = JpegThumbnailExtractor.extractExif(jpeg, minWidth, minHeight);
+        } catch (IOException e) {
+            Log.w(TAG, "Can not extract thumbnail", e);
+            return null;
+        }
+        if (thumbnail == null) {
+            return null;
+        }
+        byte[] data = thumbnail.getJpeg();
+        return BitmapFactory.decodeByteArray(data, 0, data.length);
+    }
+
+    private Bitmap findReusable(int width, int height, int sampleSize) {
+        synchronized (mPool) {
+            for (int i = 0; i < mPool.size(); i++) {
+                Bitmap bitmap = mPool.get(i);
+                boolean fits;
+                if (ApiHelper.HAS_REUSING_BITMAP_OF_ANY_SIZE) {
+                    fits = bitmap.getRowBytes() * bitmap.getHeight() >= width * height * 4;
+                } else {
+                    fits = sampleSize == 1 && bitmap.getWidth() == width
+                            && bitmap.getHeight() == height;
+                }
+                if (fits && bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+                    return mPool.remove(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 缓存池中有同样大小的bitmap时直接使用，否则重新创建
+     */
+    private Bitmap obtain(int width, int height) {
+        synchronized (mPool) {
+            for (int i = 0; i < mPool.size(); i++) {
+                Bitmap bitmap = mPool.get(i);
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+                    mPool.remove(i);
+                    bitmap.eraseColor(0);
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+}
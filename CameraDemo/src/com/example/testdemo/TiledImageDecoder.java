@@ -0,0 +1,282 @@
+package com.example.testdemo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 按区域分块解码大照片。只解码可见的区域，区域按采样率分成固定大小的块，多个块在多个线程中同时解码，
+ * 每个线程使用自己的BitmapRegionDecoder，避免同一个解码器内部的锁让解码变成串行。
+ * 系统支持时块使用的bitmap通过inBitmap重复使用，放大查看照片时连续解码不需要重新分配。
+ * 只用于查看照片时解码可见的区域，生成整张照片的预览图时使用BitmapFactory按采样率解码，
+ * 整张照片分块解码没有测量证明比采样解码快。
+ * 需要在后台线程中调用，用完以后调用 {@link #recycle()}。
+ */
+public class TiledImageDecoder {
+
+    // 解码以后每块的边长
+    public static final int TILE_SIZE = 512;
+    private static final int MAX_TILE_POOL_SIZE = 8;
+
+    private static ExecutorService sExecutor;
+    private static int sThreadCount;
+
+    private final String mPath;
+    private final byte[] mData;
+    private final int mWidth;
+    private final int mHeight;
+    private final BlockingQueue<BitmapRegionDecoder> mIdleDecoders;
+    private final List<BitmapRegionDecoder> mDecoders = new ArrayList<BitmapRegionDecoder>();
+    private final BlockingQueue<Bitmap> mTilePool =
+            new ArrayBlockingQueue<Bitmap>(MAX_TILE_POOL_SIZE);
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private boolean mRecycled;
+
+    /**
+     * @param path jpeg文件路径
+     * @throws IOException 不能读取或者不是支持的图片格式
+     */
+    public TiledImageDecoder(String path) throws IOException {
+        this(path, null);
+    }
+
+    /**
+     * @param jpeg jpeg数据，解码期间不能修改
+     * @throws IOException 不是支持的图片格式
+     */
+    public TiledImageDecoder(byte[] jpeg) throws IOException {
+        this(null, jpeg);
+    }
+
+    private TiledImageDecoder(String path, byte[] data) throws IOException {
+        mPath = path;
+        mData = data;
+        getExecutor();
+        mIdleDecoders = new ArrayBlockingQueue<BitmapRegionDecoder>(sThreadCount);
+        BitmapRegionDecoder decoder = newDecoder();
+        mDecoders.add(decoder);
+        mIdleDecoders.add(decoder);
+        mWidth = decoder.getWidth();
+        mHeight = decoder.getHeight();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 解码区域，采样率按显示尺寸计算
+     * 
+     * @param region 照片中的区域，超出照片的部分会被裁掉
+     * @param viewWidth 显示的宽度
+     * @param viewHeight 显示的高度
+     * @return 解码结果，失败时返回null
+     */
+    public Bitmap decodeViewport(Rect region, int viewWidth, int viewHeight) {
+        int sampleSize = SizeUtil.calculateInSampleSize(region.width(), region.height(),
+                viewWidth, viewHeight);
+        return decodeRegion(region, sampleSize);
+    }
+
+    /**
+     * 按采样率解码区域，每块在线程池中解码以后画到结果中
+     * 
+     * @param region 照片中的区域，超出照片的部分会被裁掉
+     * @param sampleSize 采样率，与BitmapFactory.Options.inSampleSize相同
+     * @return 解码结果，宽高为区域的宽高除以采样率，失败时返回null
+     */
+    public Bitmap decodeRegion(Rect region, final int sampleSize) {
+        final Rect clipped = new Rect(Math.max(0, region.left), Math.max(0, region.top),
+                Math.min(mWidth, region.right), Math.min(mHeight, region.bottom));
+        if (clipped.right <= clipped.left || clipped.bottom <= clipped.top || mRecycled) {
+            return null;
+        }
+        int tileSource = TILE_SIZE * sampleSize;
+        int width = (clipped.right - clipped.left + sampleSize - 1) / sampleSize;
+        int height = (clipped.bottom - clipped.top + sampleSize - 1) / sampleSize;
+        List<Future<Bitmap>> futures = new ArrayList<Future<Bitmap>>();
+        List<Rect> targets = new ArrayList<Rect>();
+        for (int top = clipped.top; top < clipped.bottom; top += tileSource) {
+            for (int left = clipped.left; left < clipped.right; left += tileSource) {
+                final Rect tile = new Rect(left, top, Math.min(left + tileSource, clipped.right),
+                        Math.min(top + tileSource, clipped.bottom));
+                int x = (left - clipped.left) / sampleSize;
+                int y = (top - clipped.top) / sampleSize;
+                targets.add(new Rect(x, y, Math.min(x + TILE_SIZE, width),
+                        Math.min(y + TILE_SIZE, height)));
+                futures.add(sExecutor.submit(new Callable<Bitmap>() {
+                    @Override
+                    public Bitmap call() throws Exception {
+                        return decodeTile(tile, sampleSize);
+                    }
+                }));
+            }
+        }
+
+        Bitmap result = null;
+        Canvas canvas = null;
+        Rect source = new Rect();
+        try {
+            result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(result);
+        } catch (OutOfMemoryError e) {
+            result = null;
+        }
+        // 即使失败也要等待所有的块解码完，把块放回缓存池
+        for (int i = 0; i < futures.size(); i++) {
+            Bitmap tile = await(futures.get(i));
+            if (tile == null) {
+                if (result != null) {
+                    result.recycle();
+                    result = null;
+                }
+                continue;
+            }
+            if (result != null) {
+                Rect target = targets.get(i);
+                // 重复使用的块比实际内容大，只画左上角有效的部分
+                source.set(0, 0, Math.min(target.width(), tile.getWidth()),
+                        Math.min(target.height(), tile.getHeight()));
+                canvas.drawBitmap(tile, source, target, mPaint);
+            }
+            releaseTile(tile);
+        }
+        return result;
+    }
+
+    /**
+     * 释放所有的解码器与缓存的块，正在进行的解码需要先结束
+     */
+    public synchronized void recycle() {
+        mRecycled = true;
+        for (BitmapRegionDecoder decoder : mDecoders) {
+            decoder.recycle();
+        }
+        mDecoders.clear();
+        Bitmap bitmap;
+        while ((bitmap = mTilePool.poll()) != null) {
+            bitmap.recycle();
+        }
+    }
+
+    private Bitmap decodeTile(Rect tile, int sampleSize) throws IOException, InterruptedException {
+        BitmapRegionDecoder decoder = obtainDecoder();
+        if (decoder == null) {
+            return null;
+        }
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            if (ApiHelper.HAS_REUSING_BITMAP_IN_BITMAP_REGION_DECODER) {
+                // 超出块的内容会被裁掉，块的宽高不会改变
+                options.inBitmap = mTilePool.poll();
+                if (options.inBitmap == null) {
+                    options.inBitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE,
+                            Bitmap.Config.ARGB_8888);
+                }
+            }
+            Bitmap bitmap = decoder.decodeRegion(tile, options);
+            if (bitmap == null && options.inBitmap != null) {
+                releaseTile(options.inBitmap);
+            }
+            return bitmap;
+        } finally {
+            mIdleDecoders.offer(decoder);
+        }
+    }
+
+    /**
+     * 取一个空闲的解码器，没有空闲的并且数量少于线程数时新建一个
+     */
+    private BitmapRegionDecoder obtainDecoder() throws IOException, InterruptedException {
+        BitmapRegionDecoder decoder = mIdleDecoders.poll();
+        if (decoder != null) {
+            return decoder;
+        }
+        synchronized (this) {
+            if (mRecycled) {
+                return null;
+            }
+            if (mDecoders.size() < sThreadCount) {
+                decoder = newDecoder();
+                mDecoders.add(decoder);
+                return decoder;
+            }
+        }
+        return mIdleDecoders.take();
+    }
+
+    private BitmapRegionDecoder newDecoder() throws IOException {
+        BitmapRegionDecoder decoder = mPath != null
+                ? BitmapRegionDecoder.newInstance(mPath, true)
+                : BitmapRegionDecoder.newInstance(mData, 0, mData.length, true);
+        if (decoder == null) {
+            throw new IOException("Unsupported image");
+        }
+        return decoder;
+    }
+
+    private void releaseTile(Bitmap tile) {
+        if (!ApiHelper.HAS_REUSING_BITMAP_IN_BITMAP_REGION_DECODER || !tile.isMutable()
+                || tile.getWidth() != TILE_SIZE || tile.getHeight() != TILE_SIZE
+                || !mTilePool.offer(tile)) {
+            tile.recycle();
+        }
+    }
+
+    private static Bitmap await(Future<Bitmap> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            // 解码失败或者内存不足时这一块为空
+            return null;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sThreadCount = Runtime.getRuntime().availableProcessors();
+            sExecutor = Executors.newFixedThreadPool(sThreadCount, new ThreadFactory() {
+                private int mCount;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TiledImageDecoder-" + (++mCount));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
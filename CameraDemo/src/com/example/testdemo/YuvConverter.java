@@ -0,0 +1,382 @@
+package com.example.testdemo;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * YUV转ARGB的转换器，支持NV21、YV12与YUV422P三种格式。
+ * 结果写入调用者提供的int[]或者IntBuffer，不会每次分配新的数组；
+ * 图片较大时按行分段交给多个线程同时转换。
+ * 系数与取值范围和 CameraUtil.decodeYUV422P 的逐像素算法完全一致，只是把乘法换成了查表。
+ */
+public class YuvConverter {
+
+    // 与 android.graphics.ImageFormat.NV21 的值相同
+    public static final int FORMAT_NV21 = 0x11;
+    // 与 android.graphics.ImageFormat.YV12 的值相同
+    public static final int FORMAT_YV12 = 0x32315659;
+    // Y平面之后是U平面与V平面，每个色度平面为每行 width/2 个、共 height 行
+    public static final int FORMAT_YUV422P = 0x10000;
+
+    // 像素少于这个数量时在调用线程中直接转换
+    private static final int MIN_PARALLEL_PIXELS = 320 * 240;
+    private static final int MAX_RGB = 262143;
+
+    private static final int[] Y_TABLE = new int[256];
+    private static final int[] RV_TABLE = new int[256];
+    private static final int[] GV_TABLE = new int[256];
+    private static final int[] GU_TABLE = new int[256];
+    private static final int[] BU_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int y = i - 16;
+            Y_TABLE[i] = 1192 * (y < 0 ? 0 : y);
+            int c = i - 128;
+            RV_TABLE[i] = 1634 * c;
+            GV_TABLE[i] = 833 * c;
+            GU_TABLE[i] = 400 * c;
+            BU_TABLE[i] = 2066 * c;
+        }
+    }
+
+    private static YuvConverter sDefault;
+
+    private final int mThreadCount;
+    private final ExecutorService mExecutor;
+    private final ThreadLocal<int[]> mRowBuffer = new ThreadLocal<int[]>();
+
+    /**
+     * 全局共享的转换器，线程数为cpu核数
+     * 
+     * @return
+     */
+    public static synchronized YuvConverter getDefault() {
+        if (sDefault == null) {
+            sDefault = new YuvConverter(Runtime.getRuntime().availableProcessors());
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param threadCount 参与转换的线程数，为1时只在调用线程中转换
+     */
+    public YuvConverter(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mThreadCount = threadCount;
+        if (threadCount > 1) {
+            mExecutor = Executors.newFixedThreadPool(threadCount - 1, new ThreadFactory() {
+                private int mCount;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "YuvConverter-" + (++mCount));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * 计算一帧数据的字节数
+     * 
+     * @param width 宽度
+     * @param height 高度
+     * @param format 格式
+     * @return
+     */
+    public static int getFrameSize(int width, int height, int format) {
+        switch (format) {
+            case FORMAT_NV21:
+                return width * height + (height + 1) / 2 * width;
+            case FORMAT_YV12:
+                int yStride = alignTo16(width);
+                int uvStride = alignTo16(yStride / 2);
+                return yStride * height + uvStride * height / 2 * 2;
+            case FORMAT_YUV422P:
+                return width * height * 2;
+            default:
+                throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    /**
+     * 转换一帧数据到int数组，数组中每个元素为一个ARGB像素
+     * 
+     * @param yuv 源数据
+     * @param width 宽度
+     * @param height 高度
+     * @param format 格式
+     * @param argb 结果数组，长度至少为 width * height
+     */
+    public void convert(byte[] yuv, int width, int height, int format, int[] argb) {
+        convert(yuv, width, height, format, argb, 0);
+    }
+
+    /**
+     * 转换一帧数据到int数组
+     * 
+     * @param yuv 源数据
+     * @param width 宽度
+     * @param height 高度
+     * @param format 格式
+     * @param argb 结果数组
+     * @param offset 结果在数组中的起始位置
+     */
+    public void convert(byte[] yuv, int width, int height, int format, int[] argb,
+            int offset) {
+        checkArguments(yuv, width, height, format);
+        if (offset < 0 || argb.length - offset < width * height) {
+            throw new IllegalArgumentException("argb array too small");
+        }
+        run(new ArrayTask(yuv, width, height, format, argb, offset), height);
+    }
+
+    /**
+     * 转换一帧数据到IntBuffer，从buffer当前的position开始写入，写完以后position移到结果末尾
+     * 
+     * @param yuv 源数据
+     * @param width 宽度
+     * @param height 高度
+     * @param format 格式
+     * @param argb 结果buffer，剩余空间至少为 width * height
+     */
+    public void convert(byte[] yuv, int width, int height, int format, IntBuffer argb) {
+        checkArguments(yuv, width, height, format);
+        int frameSize = width * height;
+        if (argb.remaining() < frameSize) {
+            throw new IllegalArgumentException("argb buffer too small");
+        }
+        int position = argb.position();
+        if (argb.hasArray()) {
+            convert(yuv, width, height, format, argb.array(), argb.arrayOffset() + position);
+        } else {
+            run(new BufferTask(yuv, width, height, format, argb, position), height);
+        }
+        argb.position(position + frameSize);
+    }
+
+    /**
+     * 停止后台线程，之后只能在调用线程中转换
+     */
+    public void shutdown() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    private static void checkArguments(byte[] yuv, int width, int height, int format) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width " + width + " height " + height);
+        }
+        if (yuv.length < getFrameSize(width, height, format)) {
+            throw new IllegalArgumentException("yuv data too small");
+        }
+    }
+
+    private static int alignTo16(int value) {
+        return (value + 15) & ~15;
+    }
+
+    /**
+     * 按行分段执行转换，最后一段在调用线程中执行
+     */
+    private void run(final RowTask task, int height) {
+        int bands = mThreadCount;
+        if (mExecutor == null || mExecutor.isShutdown()
+                || task.pixelCount() < MIN_PARALLEL_PIXELS) {
+            bands = 1;
+        }
+        bands = Math.min(bands, height);
+        if (bands == 1) {
+            task.convertRows(0, height);
+            return;
+        }
+        int rowsPerBand = (height + bands - 1) / bands;
+        final CountDownLatch latch = new CountDownLatch(bands - 1);
+        final RuntimeException[] failure = new RuntimeException[1];
+        for (int i = 0; i < bands - 1; i++) {
+            final int start = i * rowsPerBand;
+            final int end = Math.min(height, start + rowsPerBand);
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.convertRows(start, end);
+                    } catch (RuntimeException e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        task.convertRows((bands - 1) * rowsPerBand, height);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    private static int toArgb(int yValue, int u, int v) {
+        int y1192 = Y_TABLE[yValue];
+        int r = y1192 + RV_TABLE[v];
+        int g = y1192 - GV_TABLE[v] - GU_TABLE[u];
+        int b = y1192 + BU_TABLE[u];
+
+        if (r < 0)
+            r = 0;
+        else if (r > MAX_RGB)
+            r = MAX_RGB;
+        if (g < 0)
+            g = 0;
+        else if (g > MAX_RGB)
+            g = MAX_RGB;
+        if (b < 0)
+            b = 0;
+        else if (b > MAX_RGB)
+            b = MAX_RGB;
+
+        return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+    }
+
+    /**
+     * 转换一行像素
+     * 
+     * @param yuv 源数据
+     * @param width 宽度
+     * @param height 高度
+     * @param format 格式
+     * @param row 行号
+     * @param out 结果数组
+     * @param outOffset 该行结果的起始位置
+     */
+    static void convertRow(byte[] yuv, int width, int height, int format, int row,
+            int[] out, int outOffset) {
+        switch (format) {
+            case FORMAT_NV21: {
+                int yp = row * width;
+                int uvp = width * height + (row >> 1) * width;
+                for (int i = 0; i < width; i++) {
+                    int uv = uvp + (i & ~1);
+                    out[outOffset + i] = toArgb(yuv[yp + i] & 0xff, yuv[uv + 1] & 0xff,
+                            yuv[uv] & 0xff);
+                }
+                break;
+            }
+            case FORMAT_YV12: {
+                int yStride = alignTo16(width);
+                int uvStride = alignTo16(yStride / 2);
+                int yp = row * yStride;
+                int vp = yStride * height + (row >> 1) * uvStride;
+                int up = yStride * height + uvStride * (height / 2) + (row >> 1) * uvStride;
+                for (int i = 0; i < width; i++) {
+                    out[outOffset + i] = toArgb(yuv[yp + i] & 0xff, yuv[up + (i >> 1)] & 0xff,
+                            yuv[vp + (i >> 1)] & 0xff);
+                }
+                break;
+            }
+            case FORMAT_YUV422P: {
+                int frameSize = width * height;
+                int yp = row * width;
+                int up = frameSize + row * (width / 2);
+                int vp = (int) (frameSize * 1.5) + row * (width / 2);
+                for (int i = 0; i < width; i++) {
+                    out[outOffset + i] = toArgb(yuv[yp + i] & 0xff, yuv[up + (i >> 1)] & 0xff,
+                            yuv[vp + (i >> 1)] & 0xff);
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    private abstract static class RowTask {
+        final byte[] mYuv;
+        final int mWidth;
+        final int mHeight;
+        final int mFormat;
+
+        RowTask(byte[] yuv, int width, int height, int format) {
+            mYuv = yuv;
+            mWidth = width;
+            mHeight = height;
+            mFormat = format;
+        }
+
+        int pixelCount() {
+            return mWidth * mHeight;
+        }
+
+        abstract void convertRows(int start, int end);
+    }
+
+    private static class ArrayTask extends RowTask {
+        private final int[] mOut;
+        private final int mOffset;
+
+        ArrayTask(byte[] yuv, int width, int height, int format, int[] out, int offset) {
+            super(yuv, width, height, format);
+            mOut = out;
+            mOffset = offset;
+        }
+
+        @Override
+        void convertRows(int start, int end) {
+            for (int row = start; row < end; row++) {
+                convertRow(mYuv, mWidth, mHeight, mFormat, row, mOut, mOffset + row * mWidth);
+            }
+        }
+    }
+
+    private class BufferTask extends RowTask {
+        private final IntBuffer mOut;
+        private final int mPosition;
+
+        BufferTask(byte[] yuv, int width, int height, int format, IntBuffer out, int position) {
+            super(yuv, width, height, format);
+            mOut = out;
+            mPosition = position;
+        }
+
+        @Override
+        void convertRows(int start, int end) {
+            // 每个线程复用自己的行缓存，再整行写入buffer
+            int[] row = mRowBuffer.get();
+            if (row == null || row.length < mWidth) {
+                row = new int[mWidth];
+                mRowBuffer.set(row);
+            }
+            IntBuffer out = mOut.duplicate();
+            for (int i = start; i < end; i++) {
+                convertRow(mYuv, mWidth, mHeight, mFormat, i, row, 0);
+                out.position(mPosition + i * mWidth);
+                out.put(row, 0, mWidth);
+            }
+        }
+    }
+}
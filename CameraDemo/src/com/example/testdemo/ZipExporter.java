@@ -0,0 +1,487 @@
+package com.example.testdemo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 照片批量导出为zip文件。
+ * jpg等本身已经压缩过的文件直接存储不再压缩，其余文件使用deflate压缩。
+ * crc与压缩在多个线程中同时计算，写入zip文件只在调用线程中按顺序进行，
+ * 直接存储的文件使用FileChannel.transferTo复制到zip文件中。
+ * 需要在后台线程中调用，进度回调也在调用线程中执行。
+ */
+public class ZipExporter {
+
+    /**
+     * 导出进度回调
+     */
+    public interface ProgressListener {
+        /**
+         * 每写完一个条目回调一次
+         * 
+         * @param bytesDone 已经写入的原始数据字节数
+         * @param bytesTotal 全部原始数据字节数
+         * @param entriesDone 已经写入的条目数
+         * @param entriesTotal 全部条目数
+         */
+        void onProgress(long bytesDone, long bytesTotal, int entriesDone, int entriesTotal);
+    }
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    // 超过这个大小的压缩文件不在内存中压缩，而是在写入时直接压缩到zip文件
+    private static final int MAX_IN_MEMORY_DEFLATE = 1024 * 1024;
+    private static final String[] STORED_EXTENSIONS = {
+            ".jpg", ".jpeg", ".png", ".gif", ".webp", ".mp4", ".3gp", ".zip", ".zdb"
+    };
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    // 文件名使用utf-8编码
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int EXTERNAL_ATTR_DIRECTORY = 0x10;
+    private static final long MAX_ZIP32 = 0xFFFFFFFFL;
+    private static final int MAX_ZIP32_ENTRIES = 0xFFFF;
+
+    private final int mThreadCount;
+    private int mLevel = Deflater.DEFAULT_COMPRESSION;
+    private ProgressListener mListener;
+    private volatile boolean mCancelled;
+
+    public ZipExporter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount 计算crc与压缩的线程数
+     */
+    public ZipExporter(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mThreadCount = threadCount;
+    }
+
+    public void setLevel(int level) {
+        mLevel = level;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 取消正在进行的导出，export会抛出InterruptedIOException并删除不完整的zip文件
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * 导出一个目录或者文件，规则与 ZipUtils.pack 相同：
+     * 目录中的内容以目录本身为根，单个文件以所在的目录为根
+     * 
+     * @param source 目录或者文件
+     * @param zip zip文件
+     * @throws IOException
+     */
+    public void export(File source, File zip) throws IOException {
+        List<File> files = new ArrayList<File>();
+        File base;
+        if (source.isDirectory()) {
+            base = source;
+            File[] children = source.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    files.add(child);
+                }
+            }
+        } else {
+            base = source.getAbsoluteFile().getParentFile();
+            files.add(source);
+        }
+        export(files, base, zip);
+    }
+
+    /**
+     * 导出多个文件或者目录，目录会包含其中的所有内容
+     * 
+     * @param files 需要导出的文件与目录
+     * @param base 条目名称为相对于这个目录的路径
+     * @param zip zip文件
+     * @throws IOException
+     */
+    public void export(List<File> files, File base, File zip) throws IOException {
+        mCancelled = false;
+        String basePath = base.getAbsolutePath();
+        // 根目录本身以分隔符结尾，其他目录加上分隔符，避免/sdcard/DCIM2被当成/sdcard/DCIM中的文件
+        String prefix = basePath.endsWith(File.separator) ? basePath : basePath + File.separator;
+        List<Entry> entries = new ArrayList<Entry>();
+        for (File file : files) {
+            collect(file.getAbsoluteFile(), prefix, entries);
+        }
+        if (entries.size() > MAX_ZIP32_ENTRIES) {
+            throw new IOException("Too many entries " + entries.size());
+        }
+
+        boolean success = false;
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        RandomAccessFile output = new RandomAccessFile(zip, "rw");
+        try {
+            output.setLength(0);
+            write(entries, executor, output.getChannel());
+            success = true;
+        } finally {
+            executor.shutdownNow();
+            output.close();
+            if (!success) {
+                zip.delete();
+            }
+        }
+    }
+
+    /**
+     * @param prefix 根目录的路径，以分隔符结尾
+     */
+    private void collect(File file, String prefix, List<Entry> entries) {
+        String path = file.getPath();
+        if (!path.startsWith(prefix) || path.length() <= prefix.length()) {
+            throw new IllegalArgumentException(file + " is not inside " + prefix);
+        }
+        String name = path.substring(prefix.length()).replace(File.separatorChar, '/');
+        if (file.isDirectory()) {
+            entries.add(new Entry(file, name + "/", true));
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(child, prefix, entries);
+                }
+            }
+        } else {
+            entries.add(new Entry(file, name, false));
+        }
+    }
+
+    /**
+     * 按顺序写入所有条目，同时最多有 mThreadCount + 1 个条目在后台准备
+     */
+    private void write(List<Entry> entries, ExecutorService executor, FileChannel out)
+            throws IOException {
+        long bytesTotal = 0;
+        for (Entry entry : entries) {
+            bytesTotal += entry.mSize;
+        }
+        int window = mThreadCount + 1;
+        ArrayDeque<Future<Entry>> pending = new ArrayDeque<Future<Entry>>(window);
+        int submitted = 0;
+        long bytesDone = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            while (submitted < entries.size() && pending.size() < window) {
+                pending.add(executor.submit(prepareTask(entries.get(submitted++))));
+            }
+            if (mCancelled) {
+                throw new InterruptedIOException("Export cancelled");
+            }
+            Entry entry = await(pending.poll());
+            writeEntry(entry, out);
+            bytesDone += entry.mSize;
+            if (mListener != null) {
+                mListener.onProgress(bytesDone, bytesTotal, i + 1, entries.size());
+            }
+        }
+        writeCentralDirectory(entries, out);
+    }
+
+    private static Entry await(Future<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to prepare entry", cause);
+        }
+    }
+
+    /**
+     * 后台计算crc，小的压缩文件同时完成压缩
+     */
+    private Callable<Entry> prepareTask(final Entry entry) {
+        return new Callable<Entry>() {
+            @Override
+            public Entry call() throws IOException {
+                if (entry.mDirectory) {
+                    return entry;
+                }
+                if (entry.mMethod == METHOD_STORED) {
+                    entry.mCrc = computeCrc(entry.mFile, entry.mSize);
+                    entry.mCompressedSize = entry.mSize;
+                } else if (entry.mSize <= MAX_IN_MEMORY_DEFLATE) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+                            (int) entry.mSize / 2 + 64);
+                    entry.mCrc = deflate(entry.mFile, compressed, mLevel);
+                    entry.mDeflated = compressed.toByteArray();
+                    entry.mCompressedSize = entry.mDeflated.length;
+                }
+                return entry;
+            }
+        };
+    }
+
+    private void writeEntry(Entry entry, FileChannel out) throws IOException {
+        entry.mOffset = out.position();
+        writeFully(out, localHeader(entry));
+        if (entry.mDirectory) {
+            return;
+        }
+        if (entry.mMethod == METHOD_STORED) {
+            transfer(entry.mFile, entry.mSize, out);
+        } else if (entry.mDeflated != null) {
+            writeFully(out, ByteBuffer.wrap(entry.mDeflated));
+            entry.mDeflated = null;
+        } else {
+            // 大文件直接压缩到zip文件中，写完以后回填本地文件头中的crc与大小
+            long start = out.position();
+            OutputStream stream = Channels.newOutputStream(out);
+            entry.mCrc = deflate(entry.mFile, stream, mLevel);
+            long end = out.position();
+            entry.mCompressedSize = end - start;
+            out.position(entry.mOffset);
+            writeFully(out, localHeader(entry));
+            out.position(end);
+        }
+        if (entry.mCompressedSize > MAX_ZIP32 || out.position() > MAX_ZIP32) {
+            throw new IOException("Zip file larger than 4GB is not supported");
+        }
+    }
+
+    private static void transfer(File file, long size, FileChannel out) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() != size) {
+                throw new IOException(file + " changed while exporting");
+            }
+            long position = 0;
+            while (position < size) {
+                long count = channel.transferTo(position, size - position, out);
+                if (count <= 0) {
+                    throw new IOException("Failed to copy " + file);
+                }
+                position += count;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long computeCrc(File file, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            long total = 0;
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, count);
+                total += count;
+            }
+            if (total != size) {
+                throw new IOException(file + " changed while exporting");
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * 压缩文件到输出流，输出流不会被关闭
+     * 
+     * @return 原始数据的crc
+     */
+    private static long deflate(File file, OutputStream out, int level) throws IOException {
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(level, true);
+        byte[] input = new byte[BUFFER_SIZE];
+        byte[] output = new byte[BUFFER_SIZE];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int count;
+            while ((count = in.read(input)) > 0) {
+                crc.update(input, 0, count);
+                deflater.setInput(input, 0, count);
+                while (!deflater.needsInput()) {
+                    out.write(output, 0, deflater.deflate(output));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(output, 0, deflater.deflate(output));
+            }
+        } finally {
+            in.close();
+            deflater.end();
+        }
+        return crc.getValue();
+    }
+
+    private static ByteBuffer localHeader(Entry entry) {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.mName.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) versionNeeded(entry));
+        header.putShort((short) FLAG_UTF8);
+        header.putShort((short) entry.mMethod);
+        header.putInt(entry.mDosTime);
+        header.putInt((int) entry.mCrc);
+        header.putInt((int) entry.mCompressedSize);
+        header.putInt((int) entry.mSize);
+        header.putShort((short) entry.mName.length);
+        header.putShort((short) 0);
+        header.put(entry.mName);
+        header.flip();
+        return header;
+    }
+
+    private static void writeCentralDirectory(List<Entry> entries, FileChannel out)
+            throws IOException {
+        long start = out.position();
+        for (Entry entry : entries) {
+            ByteBuffer header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.mName.length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort((short) 20);
+            header.putShort((short) versionNeeded(entry));
+            header.putShort((short) FLAG_UTF8);
+            header.putShort((short) entry.mMethod);
+            header.putInt(entry.mDosTime);
+            header.putInt((int) entry.mCrc);
+            header.putInt((int) entry.mCompressedSize);
+            header.putInt((int) entry.mSize);
+            header.putShort((short) entry.mName.length);
+            // extra, comment, disk number, internal attributes
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(entry.mDirectory ? EXTERNAL_ATTR_DIRECTORY : 0);
+            header.putInt((int) entry.mOffset);
+            header.put(entry.mName);
+            header.flip();
+            writeFully(out, header);
+        }
+        long end = out.position();
+        if (end > MAX_ZIP32) {
+            throw new IOException("Zip file larger than 4GB is not supported");
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt(END_SIGNATURE);
+        trailer.putShort((short) 0);
+        trailer.putShort((short) 0);
+        trailer.putShort((short) entries.size());
+        trailer.putShort((short) entries.size());
+        trailer.putInt((int) (end - start));
+        trailer.putInt((int) start);
+        trailer.putShort((short) 0);
+        trailer.flip();
+        writeFully(out, trailer);
+    }
+
+    private static int versionNeeded(Entry entry) {
+        return entry.mMethod == METHOD_DEFLATED ? 20 : 10;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * 已经压缩过的文件格式直接存储
+     * 
+     * @param name 文件名
+     * @return
+     */
+    static boolean isStored(String name) {
+        String lower = name.toLowerCase(Locale.US);
+        for (String extension : STORED_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            // 1980-01-01 00:00:00
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static class Entry {
+        final File mFile;
+        final byte[] mName;
+        final boolean mDirectory;
+        final int mMethod;
+        final long mSize;
+        final int mDosTime;
+        long mCrc;
+        long mCompressedSize;
+        long mOffset;
+        byte[] mDeflated;
+
+        Entry(File file, String name, boolean directory) {
+            mFile = file;
+            try {
+                mName = name.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+            mDirectory = directory;
+            mMethod = directory || isStored(name) ? METHOD_STORED : METHOD_DEFLATED;
+            mSize = directory ? 0 : file.length();
+            mDosTime = toDosTime(file.lastModified());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.testdemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * zip文件解压。zip文件只打开一次，多个线程同时解压不同的条目，
+ * 每个线程从缓存池中取一个缓存数组使用，解压过程中不再分配缓存。
+ * 解压后的数据只能从InflaterInputStream读到堆中的数组，直接从数组写入文件。
+ * 条目先写入 .part 文件，写完以后才重命名成目标文件并设置修改时间，
+ * 中断以后再次解压时跳过已经完成的条目，.part 文件从中断的位置继续写。
+ * 条目路径超出目标目录时抛出异常，不会写入任何目录之外的文件。
+ * 需要在后台线程中调用。
+ */
+public class ZipExtractor {
+
+    /**
+     * 解压进度回调，在解压线程中执行
+     */
+    public interface ProgressListener {
+        /**
+         * 每完成一个条目回调一次，跳过的条目也会回调
+         * 
+         * @param bytesDone 已经完成的解压后字节数
+         * @param bytesTotal 需要解压的全部字节数
+         * @param entriesDone 已经完成的条目数
+         * @param entriesTotal 需要解压的条目数
+         */
+        void onProgress(long bytesDone, long bytesTotal, int entriesDone, int entriesTotal);
+    }
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    public static final String PART_SUFFIX = ".part";
+    // zip中的修改时间精度为2秒
+    private static final long TIME_TOLERANCE = 2000;
+
+    private final int mThreadCount;
+    private final BlockingQueue<byte[]> mBuffers;
+    private Pattern mFilter;
+    private ProgressListener mListener;
+    private volatile boolean mCancelled;
+
+    public ZipExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount 同时解压的线程数
+     */
+    public ZipExtractor(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mThreadCount = threadCount;
+        mBuffers = new ArrayBlockingQueue<byte[]>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            mBuffers.add(new byte[BUFFER_SIZE]);
+        }
+    }
+
+    /**
+     * 只解压名称与通配符匹配的条目，"*"与"?"不匹配"/"，"**"匹配任意路径
+     * 
+     * @param glob 例如"photo/**.jpg"，为null时解压全部条目
+     */
+    public void setFilter(String glob) {
+        mFilter = glob == null ? null : Pattern.compile(globToRegex(glob));
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 取消正在进行的解压，extract会抛出InterruptedIOException，已经写入的部分可以在下次解压时继续
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * 解压zip文件
+     * 
+     * @param zip zip文件
+     * @param destDir 目标目录
+     * @return 实际解压的条目数，不包括已经完成而跳过的条目
+     * @throws IOException
+     */
+    public int extract(File zip, File destDir) throws IOException {
+        ZipFile zipFile = new ZipFile(zip);
+        try {
+            return extract(zipFile, destDir);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * 解压已经打开的zip文件，不会关闭zipFile
+     * 
+     * @param zipFile zip文件
+     * @param destDir 目标目录
+     * @return 实际解压的条目数，不包括已经完成而跳过的条目
+     * @throws IOException
+     */
+    public int extract(final ZipFile zipFile, File destDir) throws IOException {
+        mCancelled = false;
+        final String destPath = destDir.getCanonicalPath() + File.separator;
+        List<ZipEntry> entries = new ArrayList<ZipEntry>();
+        long total = 0;
+        Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+        while (enumeration.hasMoreElements()) {
+            ZipEntry entry = enumeration.nextElement();
+            if (mFilter == null || mFilter.matcher(entry.getName()).matches()) {
+                entries.add(entry);
+                total += Math.max(0, entry.getSize());
+            }
+        }
+
+        final int entriesTotal = entries.size();
+        final long bytesTotal = total;
+        final AtomicInteger entriesDone = new AtomicInteger();
+        final AtomicLong bytesDone = new AtomicLong();
+        final AtomicInteger extracted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(entriesTotal);
+            for (final ZipEntry entry : entries) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        if (mCancelled) {
+                            throw new InterruptedIOException("Extract cancelled");
+                        }
+                        File target = resolve(destPath, entry.getName());
+                        if (extractEntry(zipFile, entry, target)) {
+                            extracted.incrementAndGet();
+                        }
+                        long bytes = bytesDone.addAndGet(Math.max(0, entry.getSize()));
+                        int done = entriesDone.incrementAndGet();
+                        ProgressListener listener = mListener;
+                        if (listener != null) {
+                            listener.onProgress(bytes, bytesTotal, done, entriesTotal);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return extracted.get();
+    }
+
+    /**
+     * 计算条目的目标文件，条目路径超出目标目录时抛出异常
+     */
+    static File resolve(String destPath, String name) throws IOException {
+        File target = new File(destPath, name);
+        String path = target.getCanonicalPath();
+        if (!path.startsWith(destPath) && !(path + File.separator).equals(destPath)) {
+            throw new IOException("Entry " + name + " is outside of " + destPath);
+        }
+        return target;
+    }
+
+    /**
+     * @return true实际解压了数据，false已经完成而跳过
+     */
+    private boolean extractEntry(ZipFile zipFile, ZipEntry entry, File target)
+            throws IOException {
+        if (entry.isDirectory()) {
+            mkdirs(target);
+            return false;
+        }
+        long size = entry.getSize();
+        long time = entry.getTime();
+        if (target.isFile() && target.length() == size
+                && (time < 0 || Math.abs(target.lastModified() - time) < TIME_TOLERANCE)) {
+            return false;
+        }
+        mkdirs(target.getParentFile());
+
+        File part = new File(target.getPath() + PART_SUFFIX);
+        long offset = part.isFile() ? part.length() : 0;
+        if (size >= 0 && offset > size) {
+            offset = 0;
+        }
+        InputStream in = zipFile.getInputStream(entry);
+        FileOutputStream out;
+        try {
+            out = new FileOutputStream(part, offset > 0);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        byte[] buffer = null;
+        try {
+            buffer = takeBuffer();
+            skipFully(in, offset);
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                if (mCancelled) {
+                    throw new InterruptedIOException("Extract cancelled");
+                }
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            if (buffer != null) {
+                mBuffers.offer(buffer);
+            }
+            try {
+                in.close();
+            } finally {
+                out.close();
+            }
+        }
+        if (size >= 0 && part.length() != size) {
+            part.delete();
+            throw new IOException("Size mismatch for " + entry.getName());
+        }
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Can not replace " + target);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("Can not rename " + part + " to " + target);
+        }
+        if (time >= 0) {
+            target.setLastModified(time);
+        }
+        return true;
+    }
+
+    private byte[] takeBuffer() throws IOException {
+        try {
+            return mBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Extract interrupted");
+        }
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Extract interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to extract entry", cause);
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Can not create directory " + dir);
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Unexpected end of entry");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+}
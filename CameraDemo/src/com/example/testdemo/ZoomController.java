@@ -0,0 +1,348 @@
+package com.example.testdemo;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.List;
+
+/**
+ * 控制缩放。手势的两指距离按比例连续换算成缩放倍数，再取最接近的缩放级别；
+ * 相机支持平滑缩放时使用startSmoothZoom，缩放过程中有新的目标时先停止，停止以后再缩放到最新的目标；
+ * 不支持时交给 {@link CameraParameterCache}，一帧以内的多次缩放只提交一次。
+ * 记录从请求缩放到相机完成缩放的延迟。
+ * 只能在主线程中使用。对相机的调用都通过 {@link CameraDevice#execute(Runnable)} 在相机线程中执行，
+ * 平滑缩放失败的结果与onZoomChange都转到主线程处理。
+ */
+public class ZoomController implements Camera.OnZoomChangeListener,
+        CameraParameterCache.OnFlushListener {
+
+    private static final String TAG = "ZoomController";
+
+    /**
+     * 缩放级别改变的回调，在主线程中执行
+     */
+    public interface OnZoomChangedListener {
+        /**
+         * @param zoom 相机当前的缩放级别，平滑缩放的过程中会多次回调
+         */
+        void onZoomChanged(int zoom);
+    }
+
+    private final CameraDevice mDevice;
+    private final Camera mCamera;
+    private final CameraParameterCache mParameters;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final boolean mSmoothZoomSupported;
+    // 每个缩放级别的倍数乘以100
+    private final int[] mZoomRatios;
+    private OnZoomChangedListener mListener;
+    private int mTargetZoom;
+    private boolean mSmoothZooming;
+    private boolean mReleased;
+    private float mScaleBaseRatio;
+    // 本次缩放第一次请求的时间，0表示没有等待完成的缩放
+    private long mRequestTime;
+    private long mLastLatency;
+    private long mMaxLatency;
+    private long mTotalLatency;
+    private int mLatencyCount;
+
+    /**
+     * @param device 已经打开相机的设备，缩放的回调会设置到当前的相机上
+     */
+    public ZoomController(CameraDevice device) {
+        mDevice = device;
+        mCamera = device.getCamera();
+        mParameters = device.getParameters();
+        CameraParameterCache parameters = mParameters;
+        Camera.Parameters cameraParam = parameters.getParameters();
+        mSmoothZoomSupported = parameters.isZoomSupported()
+                && cameraParam.isSmoothZoomSupported();
+        List<Integer> ratios = parameters.isZoomSupported() ? cameraParam.getZoomRatios() : null;
+        if (ratios != null && ratios.size() == parameters.getMaxZoom() + 1) {
+            mZoomRatios = new int[ratios.size()];
+            for (int i = 0; i < mZoomRatios.length; i++) {
+                mZoomRatios[i] = ratios.get(i);
+            }
+        } else {
+            // 没有倍数列表时认为每一级的倍数均匀增加
+            mZoomRatios = new int[parameters.getMaxZoom() + 1];
+            for (int i = 0; i < mZoomRatios.length; i++) {
+                mZoomRatios[i] = 100 + 100 * i / Math.max(1, mZoomRatios.length - 1);
+            }
+        }
+        mTargetZoom = parameters.getZoom();
+        if (mSmoothZoomSupported) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    mCamera.setZoomChangeListener(ZoomController.this);
+                }
+            });
+        }
+        mParameters.setOnFlushListener(this);
+    }
+
+    public void setOnZoomChangedListener(OnZoomChangedListener listener) {
+        mListener = listener;
+    }
+
+    public boolean isZoomSupported() {
+        return mParameters.isZoomSupported();
+    }
+
+    public int getMaxZoom() {
+        return mParameters.getMaxZoom();
+    }
+
+    /**
+     * @return 最后一次请求的缩放级别，平滑缩放时相机可能还没有到达
+     */
+    public int getZoom() {
+        return mTargetZoom;
+    }
+
+    /**
+     * 开始手势缩放，记录当前的缩放倍数
+     */
+    public void beginScale() {
+        mScaleBaseRatio = mZoomRatios[mTargetZoom];
+    }
+
+    /**
+     * 手势缩放
+     * 
+     * @param scale 两指当前距离与开始时距离的比值
+     * @return 请求的缩放级别
+     */
+    public int scale(float scale) {
+        if (!isZoomSupported() || mScaleBaseRatio <= 0) {
+            return mTargetZoom;
+        }
+        return zoomTo(findZoom(mScaleBaseRatio * scale));
+    }
+
+    /**
+     * 缩放到指定级别，与上一次请求相同时不做任何事
+     * 
+     * @param zoom 缩放级别，超出范围时取最近的值
+     * @return 请求的缩放级别
+     */
+    public int zoomTo(int zoom) {
+        if (!isZoomSupported()) {
+            return 0;
+        }
+        zoom = CameraUtil.clamp(zoom, 0, getMaxZoom());
+        if (zoom == mTargetZoom) {
+            return zoom;
+        }
+        mTargetZoom = zoom;
+        if (mRequestTime == 0) {
+            mRequestTime = SystemClock.uptimeMillis();
+        }
+        if (!mSmoothZoomSupported) {
+            mParameters.setZoom(zoom);
+        } else if (mSmoothZooming) {
+            // 停止以后在onZoomChange中缩放到新的目标
+            stopSmoothZoom();
+        } else {
+            startSmoothZoom();
+        }
+        return zoom;
+    }
+
+    /**
+     * 停止平滑缩放并取消相机上的回调，相机释放之前调用
+     */
+    public void release() {
+        if (mSmoothZoomSupported) {
+            final boolean smoothZooming = mSmoothZooming;
+            mSmoothZooming = false;
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (smoothZooming) {
+                        mCamera.stopSmoothZoom();
+                    }
+                    mCamera.setZoomChangeListener(null);
+                }
+            });
+        }
+        mParameters.setOnFlushListener(null);
+        mRequestTime = 0;
+        mReleased = true;
+    }
+
+    /**
+     * @return 最近一次缩放的延迟，单位毫秒
+     */
+    public long getLastLatency() {
+        return mLastLatency;
+    }
+
+    /**
+     * @return 最大的缩放延迟，单位毫秒
+     */
+    public long getMaxLatency() {
+        return mMaxLatency;
+    }
+
+    /**
+     * @return 平均的缩放延迟，单位毫秒，没有完成过缩放时为0
+     */
+    public long getAverageLatency() {
+        return mLatencyCount == 0 ? 0 : mTotalLatency / mLatencyCount;
+    }
+
+    public int getLatencyCount() {
+        return mLatencyCount;
+    }
+
+    @Override
+    public void onZoomChange(final int zoomValue, final boolean stopped, Camera camera) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onZoomChange(zoomValue, stopped, mCamera);
+                }
+            });
+            return;
+        }
+        if (mReleased) {
+            // 回调来自释放之前的缩放
+            return;
+        }
+        // 相机自己改变了缩放，只更新缓存
+        mParameters.onZoomChanged(zoomValue);
+        if (mListener != null) {
+            mListener.onZoomChanged(zoomValue);
+        }
+        if (!stopped) {
+            return;
+        }
+        mSmoothZooming = false;
+        if (zoomValue != mTargetZoom) {
+            startSmoothZoom();
+        } else {
+            recordLatency();
+        }
+    }
+
+    @Override
+    public void onFlush(boolean success) {
+        if (mSmoothZoomSupported || mRequestTime == 0) {
+            return;
+        }
+        if (success) {
+            recordLatency();
+            if (mListener != null) {
+                mListener.onZoomChanged(mTargetZoom);
+            }
+        } else {
+            // 缓存已经重新读取，以相机的值为准
+            mTargetZoom = mParameters.getZoom();
+            mRequestTime = 0;
+        }
+    }
+
+    private void startSmoothZoom() {
+        final int zoom = mTargetZoom;
+        mSmoothZooming = true;
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mCamera.startSmoothZoom(zoom);
+                } catch (RuntimeException e) {
+                    // 部分手机在预览停止时不能平滑缩放，直接设置参数
+                    Log.w(TAG, "startSmoothZoom failed", e);
+                    mParameters.setZoom(zoom);
+                    mParameters.flush();
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onSmoothZoomFailed(zoom);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void stopSmoothZoom() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                mCamera.stopSmoothZoom();
+            }
+        });
+    }
+
+    /**
+     * 平滑缩放没有开始，参数已经直接设置为zoom，在主线程中执行
+     */
+    private void onSmoothZoomFailed(int zoom) {
+        if (mReleased) {
+            return;
+        }
+        mSmoothZooming = false;
+        if (mListener != null) {
+            mListener.onZoomChanged(zoom);
+        }
+        if (zoom != mTargetZoom) {
+            // 失败之前已经有了新的目标
+            startSmoothZoom();
+        } else {
+            recordLatency();
+        }
+    }
+
+    /**
+     * 在相机线程中执行对相机的调用，相机已经释放或者更换时不再执行
+     */
+    private void execute(final Runnable command) {
+        mDevice.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mDevice.getCamera() == mCamera) {
+                    command.run();
+                }
+            }
+        });
+    }
+
+    private void recordLatency() {
+        if (mRequestTime == 0) {
+            return;
+        }
+        mLastLatency = SystemClock.uptimeMillis() - mRequestTime;
+        mRequestTime = 0;
+        mMaxLatency = Math.max(mMaxLatency, mLastLatency);
+        mTotalLatency += mLastLatency;
+        mLatencyCount++;
+        Log.v(TAG, "zoom " + mTargetZoom + " latency " + mLastLatency + "ms");
+    }
+
+    /**
+     * 找到倍数最接近ratio的缩放级别，倍数列表是递增的
+     */
+    private int findZoom(float ratio) {
+        int low = 0;
+        int high = mZoomRatios.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mZoomRatios[middle] < ratio) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low > 0 && ratio - mZoomRatios[low - 1] < mZoomRatios[low] - ratio) {
+            return low - 1;
+        }
+        return low;
+    }
+}
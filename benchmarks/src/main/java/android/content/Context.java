@@ -0,0 +1,17 @@
+package android.content;
+
+import android.content.res.AssetManager;
+
+import java.io.File;
+
+/**
+ * android.content.Context的替身，只为了编译FileUtils
+ */
+public abstract class Context {
+
+    public abstract AssetManager getAssets();
+
+    public abstract File getExternalFilesDir(String type);
+
+    public abstract File getFilesDir();
+}
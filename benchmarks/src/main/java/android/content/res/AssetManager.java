@@ -0,0 +1,12 @@
+package android.content.res;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * android.content.res.AssetManager的替身，只为了编译FileUtils
+ */
+public abstract class AssetManager {
+
+    public abstract InputStream open(String fileName) throws IOException;
+}
@@ -0,0 +1,28 @@
+package android.net;
+
+import java.io.File;
+
+/**
+ * android.net.Uri的替身，只支持file:路径
+ */
+public final class Uri {
+
+    private final String mPath;
+
+    private Uri(String path) {
+        mPath = path;
+    }
+
+    public static Uri fromFile(File file) {
+        return new Uri(file.getAbsolutePath());
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    @Override
+    public String toString() {
+        return "file://" + mPath;
+    }
+}
@@ -0,0 +1,22 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * android.os.Environment的替身，外部存储为系统属性java.io.tmpdir
+ */
+public final class Environment {
+
+    public static final String MEDIA_MOUNTED = "mounted";
+
+    private Environment() {
+    }
+
+    public static File getExternalStorageDirectory() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    public static String getExternalStorageState() {
+        return MEDIA_MOUNTED;
+    }
+}
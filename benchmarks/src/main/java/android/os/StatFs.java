@@ -0,0 +1,28 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * android.os.StatFs的替身，块大小固定为4096
+ */
+public class StatFs {
+
+    private static final int BLOCK_SIZE = 4096;
+    private final File mPath;
+
+    public StatFs(String path) {
+        mPath = new File(path);
+    }
+
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    public int getBlockCount() {
+        return (int) (mPath.getTotalSpace() / BLOCK_SIZE);
+    }
+
+    public int getAvailableBlocks() {
+        return (int) (mPath.getUsableSpace() / BLOCK_SIZE);
+    }
+}
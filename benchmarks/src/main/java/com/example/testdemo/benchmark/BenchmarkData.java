@@ -0,0 +1,169 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.ExifData;
+import com.example.testdemo.ExifWriter;
+import com.example.testdemo.GpsEncoder;
+import com.example.testdemo.JpegExifSplicer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 测量用的数据，照片由ImageIO生成并写入与相机照片相同的exif，其他文件为随机数据
+ */
+public class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 生成带exif的jpeg，exif中有方向、尺寸、拍摄时间、gps与缩略图
+     * 
+     * @param width 宽度
+     * @param height 高度
+     * @param orientation 需要顺时针旋转的角度
+     * @param seed 图像内容的随机种子
+     * @return
+     * @throws IOException
+     */
+    public static byte[] createJpeg(int width, int height, int orientation, long seed)
+            throws IOException {
+        ExifWriter exif = new ExifWriter();
+        exif.setOrientation(orientation);
+        exif.setLong(ExifData.IFD_EXIF, ExifData.TAG_PIXEL_X_DIMENSION, width);
+        exif.setLong(ExifData.IFD_EXIF, ExifData.TAG_PIXEL_Y_DIMENSION, height);
+        exif.setAscii(ExifData.IFD_0, ExifData.TAG_MAKE, "CameraDemo");
+        exif.setAscii(ExifData.IFD_EXIF, ExifData.TAG_DATE_TIME_ORIGINAL, "2014:05:01 12:00:00");
+        GpsEncoder.getDefault().setLatLong(exif, 39.9042, 116.4074);
+        exif.setThumbnail(encode(createImage(160, 120, seed)));
+        return JpegExifSplicer.splice(encode(createImage(width, height, seed)), exif);
+    }
+
+    /**
+     * 与相机画面接近的YUV数据，亮度与色度平缓变化并带有少量噪声。
+     * 完全随机的数据会让转换中的范围判断几乎每次都预测失败，结果比实际画面慢很多
+     * 
+     * @param length 字节数
+     * @param seed 噪声的随机种子
+     * @return
+     */
+    public static byte[] createFrameBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        Random random = new Random(seed);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (128 + 80 * Math.sin(i / 4096.0) + random.nextInt(9) - 4);
+        }
+        return data;
+    }
+
+    /**
+     * 随机内容的数据
+     * 
+     * @param length 字节数
+     * @param seed 随机种子
+     * @return
+     */
+    public static byte[] createRandomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * 在目录中生成随机内容的文件，随机数据与jpeg一样几乎不能压缩
+     * 
+     * @param dir 目录，不存在时创建
+     * @param count 文件数量
+     * @param size 每个文件的字节数
+     * @param suffix 文件名后缀
+     * @throws IOException
+     */
+    public static void createFiles(File dir, int count, int size, String suffix)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create " + dir);
+        }
+        Random random = new Random(count * 31L + size);
+        byte[] buffer = new byte[Math.min(size, 1024 * 1024)];
+        for (int i = 0; i < count; i++) {
+            FileOutputStream out = new FileOutputStream(new File(dir, "IMG_" + i + suffix));
+            try {
+                for (int written = 0; written < size; written += buffer.length) {
+                    random.nextBytes(buffer);
+                    out.write(buffer, 0, Math.min(buffer.length, size - written));
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    public static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 在java.io.tmpdir中创建空目录
+     * 
+     * @param prefix 目录名前缀
+     * @return
+     * @throws IOException
+     */
+    public static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Can not create " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * 删除文件或者整个目录
+     * 
+     * @param file
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static BufferedImage createImage(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // 渐变加噪声，压缩率与相机照片接近
+                int noise = random.nextInt(32);
+                row[x] = ((x * 255 / width + noise) & 0xFF) << 16
+                        | ((y * 255 / height + noise) & 0xFF) << 8 | (noise * 4);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "jpg", out)) {
+            throw new IOException("No jpeg writer");
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.Exif;
+import com.example.testdemo.ExifReader;
+import com.example.testdemo.ExifWriter;
+import com.example.testdemo.JpegExifSplicer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 读取照片方向与写入exif。Exif中没有写入的方法，pack测量拍照保存时使用的
+ * ExifWriter.toApp1与JpegExifSplicer.splice，即在写文件之前替换exif。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExifBenchmark {
+
+    private byte[] mJpeg;
+    private File mDir;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJpeg = BenchmarkData.createJpeg(1600, 1200, 90, 1);
+        mDir = BenchmarkData.createTempDir("exif");
+        mFile = new File(mDir, "IMG_0.jpg");
+        BenchmarkData.writeFile(mFile, mJpeg);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(mDir);
+    }
+
+    @Benchmark
+    public int getOrientationBytes() {
+        return Exif.getOrientation(mJpeg);
+    }
+
+    @Benchmark
+    public int getOrientationFile() {
+        return Exif.getOrientation(mFile);
+    }
+
+    @Benchmark
+    public byte[] pack() throws IOException {
+        ExifWriter exif = new ExifWriter(ExifReader.read(ByteBuffer.wrap(mJpeg)));
+        exif.setOrientation(180);
+        return JpegExifSplicer.splice(mJpeg, exif);
+    }
+}
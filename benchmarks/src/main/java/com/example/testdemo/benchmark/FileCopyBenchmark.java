@@ -0,0 +1,117 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.FileCopier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 复制256MB的目录，FileCopier与原来的FileUtils.copyToDirectory比较。
+ * small是16个子目录共8192个32KB的文件，large是8个32MB的文件。
+ * legacyCopy是原来的实现：1KB缓存的BufferedInputStream/BufferedOutputStream，逐个文件复制。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileCopyBenchmark {
+
+    private static final int LEGACY_BUFFER = 1024;
+
+    @Param({
+            "small", "large"
+    })
+    public String layout;
+
+    private File mDir;
+    private File mSource;
+    private File mTarget;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDir = BenchmarkData.createTempDir("copy");
+        mSource = new File(mDir, "DCIM");
+        if ("small".equals(layout)) {
+            for (int i = 0; i < 16; i++) {
+                BenchmarkData.createFiles(new File(mSource, "dir" + i), 512, 32 * 1024, ".jpg");
+            }
+        } else {
+            BenchmarkData.createFiles(mSource, 8, 32 * 1024 * 1024, ".jpg");
+        }
+        mTarget = new File(mDir, "copy");
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() {
+        BenchmarkData.delete(mTarget);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(mDir);
+    }
+
+    @Benchmark
+    public int copy() throws IOException {
+        return new FileCopier().copy(mSource, mTarget);
+    }
+
+    @Benchmark
+    public int copySingleThread() throws IOException {
+        return new FileCopier(1).copy(mSource, mTarget);
+    }
+
+    @Benchmark
+    public int legacyCopy() throws IOException {
+        return legacyCopy(mSource, mTarget);
+    }
+
+    private static int legacyCopy(File source, File target) throws IOException {
+        if (source.isDirectory()) {
+            if (!target.mkdir()) {
+                throw new IOException("Can not create " + target);
+            }
+            int count = 0;
+            for (String name : source.list()) {
+                count += legacyCopy(new File(source, name), new File(target, name));
+            }
+            return count;
+        }
+        byte[] data = new byte[LEGACY_BUFFER];
+        int read;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+        InputStream in = new BufferedInputStream(new FileInputStream(source));
+        try {
+            while ((read = in.read(data, 0, LEGACY_BUFFER)) != -1) {
+                out.write(data, 0, read);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+        return 1;
+    }
+}
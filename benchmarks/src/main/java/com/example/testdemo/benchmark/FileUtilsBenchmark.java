@@ -0,0 +1,71 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.DirectoryStats;
+import com.example.testdemo.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FileUtils.getFileList与getFileSize，目录树中有20个子目录，每个子目录50个1KB的文件
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileUtilsBenchmark {
+
+    private File mDir;
+    private DirectoryStats mCachedStats;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDir = BenchmarkData.createTempDir("files");
+        for (int i = 0; i < 20; i++) {
+            BenchmarkData.createFiles(new File(mDir, "dir" + i), 50, 1024, ".jpg");
+        }
+        mCachedStats = new DirectoryStats(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(mDir);
+    }
+
+    @Benchmark
+    public List<File> getFileList() {
+        return FileUtils.getFileList(mDir.getPath());
+    }
+
+    /**
+     * 不使用缓存，每次读取所有文件的大小
+     */
+    @Benchmark
+    public long getFileSize() {
+        return FileUtils.getFileSize(mDir);
+    }
+
+    /**
+     * 使用缓存的DirectoryStats，目录没有变化时再次统计的时间
+     */
+    @Benchmark
+    public long getFileSizeCached() {
+        return mCachedStats.get(mDir).getSize();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.Exif;
+import com.example.testdemo.ExifData;
+import com.example.testdemo.ExifReader;
+import com.example.testdemo.PhotoMetadataIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 读取整个拍照目录的照片信息：每次重新解析exif与使用PhotoMetadataIndex比较。
+ * 照片都是同一张带完整exif的320x240的jpeg，文件都在系统的文件缓存中。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhotoMetadataIndexBenchmark {
+
+    @Param({
+            "1000", "10000"
+    })
+    public int count;
+
+    private File mDir;
+    private File mIndexFile;
+    private File[] mFiles;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDir = BenchmarkData.createTempDir("index");
+        byte[] jpeg = BenchmarkData.createJpeg(320, 240, 90, 2);
+        mFiles = new File[count];
+        for (int i = 0; i < count; i++) {
+            mFiles[i] = new File(mDir, "IMG_" + i + ".jpg");
+            BenchmarkData.writeFile(mFiles[i], jpeg);
+        }
+        mIndexFile = new File(mDir, PhotoMetadataIndex.INDEX_FILE_NAME);
+        new PhotoMetadataIndex(mDir).update();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(mDir);
+    }
+
+    /**
+     * 只读取方向，原来的使用者大多这样
+     */
+    @Benchmark
+    public void reparseOrientation(Blackhole blackhole) {
+        for (File file : mFiles) {
+            blackhole.consume(Exif.getOrientation(file));
+        }
+    }
+
+    /**
+     * 读取与索引相同的信息
+     */
+    @Benchmark
+    public void reparseMetadata(Blackhole blackhole) throws IOException {
+        for (File file : mFiles) {
+            ExifData exif = ExifReader.read(file);
+            blackhole.consume(exif.getOrientation());
+            blackhole.consume(exif.getInt(ExifData.IFD_EXIF, ExifData.TAG_PIXEL_X_DIMENSION, 0));
+            blackhole.consume(exif.getInt(ExifData.IFD_EXIF, ExifData.TAG_PIXEL_Y_DIMENSION, 0));
+            blackhole.consume(exif.getLatLong());
+            blackhole.consume(exif.getString(ExifData.IFD_EXIF,
+                    ExifData.TAG_DATE_TIME_ORIGINAL));
+        }
+    }
+
+    /**
+     * 读取已有的索引文件，检查每张照片的修改时间与大小，没有照片需要解析
+     */
+    @Benchmark
+    public void indexUpdate(Blackhole blackhole) throws IOException {
+        PhotoMetadataIndex index = new PhotoMetadataIndex(mDir);
+        blackhole.consume(index.update());
+        blackhole.consume(index.getEntries());
+    }
+
+    /**
+     * 没有索引文件，解析所有照片并保存索引
+     */
+    @Benchmark
+    public void indexRebuild(Blackhole blackhole) throws IOException {
+        mIndexFile.delete();
+        PhotoMetadataIndex index = new PhotoMetadataIndex(mDir);
+        blackhole.consume(index.update());
+        blackhole.consume(index.getEntries());
+    }
+}
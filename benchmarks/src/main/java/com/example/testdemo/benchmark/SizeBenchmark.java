@@ -0,0 +1,119 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.SizeUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CameraUtil.computeSampleSize、calculateInSampleSize与CameraPreview.findBestPreviewSize。
+ * 三个方法都转调SizeUtil，这里用替身代替BitmapFactory.Options与Camera.Size，按原来的方式转调。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SizeBenchmark {
+
+    // 与CameraPreview.DEFAULT_CAPTURE_PIXELS相同
+    private static final int DEFAULT_CAPTURE_PIXELS = 1280 * 720;
+
+    /**
+     * BitmapFactory.Options的替身
+     */
+    public static class Options {
+        public int outWidth;
+        public int outHeight;
+    }
+
+    /**
+     * Camera.Size的替身
+     */
+    public static class Size {
+        public final int width;
+        public final int height;
+
+        public Size(int w, int h) {
+            width = w;
+            height = h;
+        }
+    }
+
+    private Options mOptions;
+    private List<Size> mPreviewSizes;
+
+    @Setup
+    public void setUp() {
+        mOptions = new Options();
+        mOptions.outWidth = 4608;
+        mOptions.outHeight = 3456;
+        // 常见手机后置相机支持的预览尺寸，按相机返回的顺序
+        mPreviewSizes = new ArrayList<Size>();
+        mPreviewSizes.add(new Size(1920, 1080));
+        mPreviewSizes.add(new Size(1440, 1080));
+        mPreviewSizes.add(new Size(1280, 960));
+        mPreviewSizes.add(new Size(1280, 720));
+        mPreviewSizes.add(new Size(960, 720));
+        mPreviewSizes.add(new Size(864, 480));
+        mPreviewSizes.add(new Size(800, 480));
+        mPreviewSizes.add(new Size(768, 432));
+        mPreviewSizes.add(new Size(720, 480));
+        mPreviewSizes.add(new Size(640, 480));
+        mPreviewSizes.add(new Size(576, 432));
+        mPreviewSizes.add(new Size(480, 320));
+        mPreviewSizes.add(new Size(384, 288));
+        mPreviewSizes.add(new Size(352, 288));
+        mPreviewSizes.add(new Size(320, 240));
+        mPreviewSizes.add(new Size(240, 160));
+        mPreviewSizes.add(new Size(176, 144));
+    }
+
+    @Benchmark
+    public int computeSampleSize() {
+        return SizeUtil.computeSampleSize(mOptions.outWidth, mOptions.outHeight, -1,
+                1024 * 768);
+    }
+
+    @Benchmark
+    public int calculateInSampleSize() {
+        return SizeUtil.calculateInSampleSize(mOptions.outWidth, mOptions.outHeight, 480, 360);
+    }
+
+    /**
+     * 与CameraPreview中一样，先把尺寸列表转换成数组，再依次放宽4：3与不超过目标的条件
+     */
+    @Benchmark
+    public int findBestPreviewSize() {
+        int[] widths = new int[mPreviewSizes.size()];
+        int[] heights = new int[mPreviewSizes.size()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = mPreviewSizes.get(i).width;
+            heights[i] = mPreviewSizes.get(i).height;
+        }
+        int best = SizeUtil.findBestPreviewSize(widths, heights, DEFAULT_CAPTURE_PIXELS, true,
+                true);
+        if (best < 0) {
+            best = SizeUtil.findBestPreviewSize(widths, heights, DEFAULT_CAPTURE_PIXELS, false,
+                    true);
+        }
+        if (best < 0) {
+            best = SizeUtil.findBestPreviewSize(widths, heights, DEFAULT_CAPTURE_PIXELS, false,
+                    false);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.YuvConverter;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * YuvConverter与原来逐像素、每次分配数组的decodeYUV422P比较。
+ * legacyDecodeYUV422P是原来的实现去掉Bitmap.createBitmap以后的部分，
+ * 开始测量之前检查两者的结果完全一致。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvConverterBenchmark {
+
+    @Param({
+            "640x480", "1280x720", "1920x1080"
+    })
+    public String size;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mYuv422p;
+    private byte[] mNv21;
+    private byte[] mYv12;
+    private int[] mArgb;
+    private YuvConverter mSingleThread;
+    private YuvConverter mParallel;
+
+    @Setup
+    public void setUp() {
+        int split = size.indexOf('x');
+        mWidth = Integer.parseInt(size.substring(0, split));
+        mHeight = Integer.parseInt(size.substring(split + 1));
+        mYuv422p = BenchmarkData.createFrameBytes(YuvConverter.getFrameSize(mWidth, mHeight,
+                YuvConverter.FORMAT_YUV422P), 3);
+        mNv21 = BenchmarkData.createFrameBytes(YuvConverter.getFrameSize(mWidth, mHeight,
+                YuvConverter.FORMAT_NV21), 4);
+        mYv12 = BenchmarkData.createFrameBytes(YuvConverter.getFrameSize(mWidth, mHeight,
+                YuvConverter.FORMAT_YV12), 5);
+        mArgb = new int[mWidth * mHeight];
+        mSingleThread = new YuvConverter(1);
+        mParallel = new YuvConverter(Runtime.getRuntime().availableProcessors());
+
+        int[] expected = legacyDecodeYUV422P();
+        mParallel.convert(mYuv422p, mWidth, mHeight, YuvConverter.FORMAT_YUV422P, mArgb);
+        if (!Arrays.equals(expected, mArgb)) {
+            throw new IllegalStateException("YuvConverter differs from decodeYUV422P");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSingleThread.shutdown();
+        mParallel.shutdown();
+    }
+
+    @Benchmark
+    public int[] legacyDecodeYUV422P() {
+        final int width = mWidth;
+        final int height = mHeight;
+        final byte[] yuv422p = mYuv422p;
+        final int frameSize = width * height;
+        int[] rgb = new int[frameSize];
+        for (int j = 0, yp = 0; j < height; j++) {
+            int up = frameSize + (j * (width / 2)), u = 0, v = 0;
+            int vp = ((int) (frameSize * 1.5) + (j * (width / 2)));
+            for (int i = 0; i < width; i++, yp++) {
+                int y = (0xff & ((int) yuv422p[yp])) - 16;
+                if (y < 0)
+                    y = 0;
+                if ((i & 1) == 0) {
+                    u = (0xff & yuv422p[up++]) - 128;
+                    v = (0xff & yuv422p[vp++]) - 128;
+                }
+
+                int y1192 = 1192 * y;
+                int r = (y1192 + 1634 * v);
+                int g = (y1192 - 833 * v - 400 * u);
+                int b = (y1192 + 2066 * u);
+
+                if (r < 0)
+                    r = 0;
+                else if (r > 262143)
+                    r = 262143;
+                if (g < 0)
+                    g = 0;
+                else if (g > 262143)
+                    g = 262143;
+                if (b < 0)
+                    b = 0;
+                else if (b > 262143)
+                    b = 262143;
+
+                rgb[yp] = 0xff000000 | ((r << 6) & 0xff0000)
+                        | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+            }
+        }
+        return rgb;
+    }
+
+    @Benchmark
+    public int[] yuv422pSingleThread() {
+        mSingleThread.convert(mYuv422p, mWidth, mHeight, YuvConverter.FORMAT_YUV422P, mArgb);
+        return mArgb;
+    }
+
+    @Benchmark
+    public int[] yuv422p() {
+        mParallel.convert(mYuv422p, mWidth, mHeight, YuvConverter.FORMAT_YUV422P, mArgb);
+        return mArgb;
+    }
+
+    @Benchmark
+    public int[] nv21() {
+        mParallel.convert(mNv21, mWidth, mHeight, YuvConverter.FORMAT_NV21, mArgb);
+        return mArgb;
+    }
+
+    @Benchmark
+    public int[] yv12() {
+        mParallel.convert(mYv12, mWidth, mHeight, YuvConverter.FORMAT_YV12, mArgb);
+        return mArgb;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.ZipUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ZipUtils.pack与unpack，目录中是40个256KB的照片
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipBenchmark {
+
+    private File mDir;
+    private File mPhotos;
+    private File mZip;
+    private File mPacked;
+    private File mUnpacked;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDir = BenchmarkData.createTempDir("zip");
+        mPhotos = new File(mDir, "DCIM");
+        BenchmarkData.createFiles(mPhotos, 40, 256 * 1024, ".jpg");
+        mZip = new File(mDir, "photos.zip");
+        ZipUtils.pack(mPhotos.getPath(), mZip.getPath());
+        mPacked = new File(mDir, "packed.zip");
+        mUnpacked = new File(mDir, "unpacked");
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() {
+        mPacked.delete();
+        BenchmarkData.delete(mUnpacked);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(mDir);
+    }
+
+    @Benchmark
+    public File pack() {
+        ZipUtils.pack(mPhotos.getPath(), mPacked.getPath());
+        return mPacked;
+    }
+
+    @Benchmark
+    public File unpack() {
+        ZipUtils.unpack(mZip.getPath(), mUnpacked.getPath());
+        return mUnpacked;
+    }
+}
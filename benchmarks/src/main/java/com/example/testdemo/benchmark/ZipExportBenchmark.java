@@ -0,0 +1,108 @@
+package com.example.testdemo.benchmark;
+
+import com.example.testdemo.ZipExporter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 导出1GB的照片目录，ZipExporter与原来的ZipUtils.pack比较。
+ * 目录中是256个4MB的随机数据文件，与jpeg一样几乎不能压缩。
+ * legacyPack是原来的实现：1KB的缓存，所有文件都用deflate压缩。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ZipExportBenchmark {
+
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    @Param({
+            "1024"
+    })
+    public int megabytes;
+
+    private File mDir;
+    private File mPhotos;
+    private File mZip;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDir = BenchmarkData.createTempDir("export");
+        mPhotos = new File(mDir, "DCIM");
+        BenchmarkData.createFiles(mPhotos, megabytes * 1024 * 1024 / FILE_SIZE, FILE_SIZE, ".jpg");
+        mZip = new File(mDir, "photos.zip");
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() {
+        mZip.delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkData.delete(mDir);
+    }
+
+    @Benchmark
+    public File export() throws IOException {
+        new ZipExporter().export(mPhotos, mZip);
+        return mZip;
+    }
+
+    @Benchmark
+    public File exportSingleThread() throws IOException {
+        new ZipExporter(1).export(mPhotos, mZip);
+        return mZip;
+    }
+
+    @Benchmark
+    public File legacyPack() throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(
+                new FileOutputStream(mZip)));
+        try {
+            String basePath = mPhotos.getPath();
+            byte[] buf = new byte[1024];
+            int length;
+            for (File file : mPhotos.listFiles()) {
+                zos.putNextEntry(new ZipEntry(file.getPath().substring(basePath.length() + 1)));
+                InputStream is = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    while ((length = is.read(buf)) > 0) {
+                        zos.write(buf, 0, length);
+                    }
+                } finally {
+                    is.close();
+                }
+            }
+        } finally {
+            zos.close();
+        }
+        return mZip;
+    }
+}